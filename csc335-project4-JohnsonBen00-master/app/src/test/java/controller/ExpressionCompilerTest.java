@@ -0,0 +1,89 @@
+package controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+/**
+ * Checks how ExpressionCompiler reads expressions: what binds first, which way operators group,
+ * numbers with exponents, parameters, the errors it reports, and that constant parts are computed while compiling.
+ */
+public class ExpressionCompilerTest {
+
+	private static final List<String> NAMES = List.of("x", "y");
+
+	@Test
+	public void precedence() {
+		assertEquals(7, value("1+2*3"));
+		assertEquals(9, value("(1+2)*3"));
+		assertEquals(18, value("2*3^2"));
+		assertEquals(3, value("10-4-3"));
+		assertEquals(1, value("8/4/2"));
+		assertEquals(1, value("1+2<4 && 3>2 || 0"));
+		assertEquals(0, value("1 < 2 && 2 >= 3"));
+		assertEquals(1, value("2+2 == 4"));
+	}
+
+	@Test
+	public void signsAndPowers() {
+		assertEquals(-4, value("-2^2"));
+		assertEquals(512, value("2^3^2"));
+		assertEquals(0.5, value("2^-1"));
+		assertEquals(4, value("(-2)^2"));
+		assertEquals(1, value("!0"));
+		assertEquals(0, value("!3"));
+		assertEquals(2, value("--2"));
+	}
+
+	@Test
+	public void exponents() {
+		assertEquals(0.001, value("1e-3"));
+		assertEquals(250, value("2.5E+2"));
+		assertEquals(1000, value("1e3"));
+		assertEquals(0.002, value("1e-3*2"));
+		assertEquals(2.001, value("2+1e-3"));
+	}
+
+	@Test
+	public void parameters() {
+		double[] params = { 9, 3, 4 };
+		assertEquals(10, ExpressionCompiler.compile("x*2+y", NAMES).evaluate(params, 1));
+		assertEquals(-9, ExpressionCompiler.compile("-x^2", NAMES).evaluate(params, 1));
+		assertEquals(1, ExpressionCompiler.compile("x > 1 && y <= 4", NAMES).evaluate(params, 1));
+	}
+
+	@Test
+	public void errors() {
+		IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("z+1", NAMES));
+		assertTrue(unknown.getMessage().contains("Unknown parameter z"), unknown.getMessage());
+		IllegalArgumentException trailing = assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("1 2", NAMES));
+		assertTrue(trailing.getMessage().contains("Unexpected 2"), trailing.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("x)", NAMES));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("(1+2", NAMES));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("1.2.3", NAMES));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("1+", NAMES));
+	}
+
+	@Test
+	public void folding() {
+		// Constant parts are replaced by their value, so they are never computed again for every symbol
+		assertEquals("Constant", ExpressionCompiler.compile("2*3+1", NAMES).getClass().getSimpleName());
+		assertEquals("Constant", ExpressionCompiler.compile("-(2^3^2) < 0 || !1", NAMES).getClass().getSimpleName());
+		Expression mixed = ExpressionCompiler.compile("x+2*3", NAMES);
+		assertNotEquals("Constant", mixed.getClass().getSimpleName());
+		assertEquals(10, mixed.evaluate(new double[] { 4 }, 0));
+	}
+
+	/**
+	 * Compiles an expression without parameters and computes it.
+	 * @param text -- the expression
+	 * @return its value
+	 */
+	private static double value(String text) {
+		return ExpressionCompiler.compile(text, NAMES).evaluate(new double[0], 0);
+	}
+
+}
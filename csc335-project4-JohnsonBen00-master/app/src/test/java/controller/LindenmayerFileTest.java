@@ -0,0 +1,210 @@
+package controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import graphics.Geometry;
+import graphics.SegmentBuffer;
+import model.LindenmayerModel;
+import model.Production;
+import model.SymbolCursor;
+import model.SymbolSequence;
+/**
+ * Checks that L-system files give back the inputs, symbols and line strokes written into them,
+ * and that files which are cut short or have a broken header are reported with an IOException.
+ */
+public class LindenmayerFileTest {
+
+	@TempDir
+	File directory;
+
+	@Test
+	public void symbolsRoundTrip() throws IOException {
+		LindenmayerModel model = model("F+G-F");
+		String symbols = "F[+F]F[-F]F+G-FF[+F]F";
+		File file = new File(this.directory, "symbols.lsys");
+		LindenmayerFile.writeSymbols(file, model, cursor(symbols), symbols.length());
+		LindenmayerFile saved = LindenmayerFile.open(file);
+		assertTrue(saved.hasSymbols());
+		assertEquals(symbols.length(), saved.getCount());
+		assertEquals(symbols, read(saved.getSymbols()));
+		assertSameInputs(model, saved);
+		assertEquals(Files.size(file.toPath()) - symbols.length(), headerSize(file)); // One byte a symbol
+	}
+
+	@Test
+	public void wideSymbolsRoundTrip() throws IOException {
+		LindenmayerModel model = model("FЖF"); // A symbol past a byte keeps every symbol in two bytes
+		String symbols = "FЖF[+F]Ж";
+		File file = new File(this.directory, "wide.lsys");
+		LindenmayerFile.writeSymbols(file, model, cursor(symbols), symbols.length());
+		LindenmayerFile saved = LindenmayerFile.open(file);
+		assertEquals(symbols, read(saved.getSymbols()));
+		assertEquals(Files.size(file.toPath()) - 2 * symbols.length(), headerSize(file));
+		assertSameInputs(model, saved);
+	}
+
+	@Test
+	public void segmentsRoundTrip() throws IOException {
+		LindenmayerModel model = model("F");
+		SegmentBuffer segments = segments();
+		File file = new File(this.directory, "segments.lsys");
+		LindenmayerFile.writeSegments(file, model, segments);
+		LindenmayerFile saved = LindenmayerFile.open(file);
+		assertFalse(saved.hasSymbols());
+		Geometry read = saved.getSegments();
+		assertEquals(segments.getCount(), read.getCount());
+		assertEquals(segments.getSize(), read.getSize());
+		for (int i = 0; i < segments.getSize(); i++) {
+			assertEquals(Float.floatToRawIntBits(segments.get(i)), Float.floatToRawIntBits(read.get(i)), "float " + i);
+		}
+		assertSameInputs(model, saved);
+	}
+
+	@Test
+	public void parametricSymbolsAreRefused() {
+		LindenmayerModel model = model("F");
+		model.addParametricRule("F(l) -> F(l*0.5)");
+		File file = new File(this.directory, "parametric.lsys");
+		assertThrows(IllegalArgumentException.class, () -> LindenmayerFile.writeSymbols(file, model, cursor("F"), 1));
+	}
+
+	@Test
+	public void truncatedFilesThrowIOException() throws IOException {
+		File segments = new File(this.directory, "segments.lsys");
+		LindenmayerFile.writeSegments(segments, model("F"), segments());
+		File symbols = new File(this.directory, "symbols.lsys");
+		LindenmayerFile.writeSymbols(symbols, model("F"), cursor("F+F-F"), 5);
+		for (File file : new File[] { segments, symbols }) {
+			byte[] whole = Files.readAllBytes(file.toPath());
+			File cut = new File(this.directory, "cut.lsys");
+			for (int size = 0; size < whole.length; size++) { // Cut inside the fixed header, the inputs and the data
+				try (RandomAccessFile out = new RandomAccessFile(cut, "rw")) {
+					out.setLength(0);
+					out.write(whole, 0, size);
+				}
+				int length = size;
+				assertThrows(IOException.class, () -> LindenmayerFile.open(cut), file.getName() + " cut to " + length + " bytes");
+			}
+		}
+	}
+
+	@Test
+	public void brokenHeadersThrowIOException() throws IOException {
+		File file = new File(this.directory, "segments.lsys");
+		LindenmayerFile.writeSegments(file, model("F"), segments());
+		byte[] whole = Files.readAllBytes(file.toPath());
+		int offset = headerSize(file);
+		File broken = new File(this.directory, "broken.lsys");
+		for (int i = 0; i < offset; i++) { // Every byte of the header, set to values that break sizes and counts
+			for (int value : new int[] { 0x7F, 0xFF, 0x80 }) {
+				byte[] bytes = whole.clone();
+				bytes[i] = (byte) value;
+				Files.write(broken.toPath(), bytes);
+				try {
+					LindenmayerFile.open(broken).load(new LindenmayerModel());
+				} catch (IOException e) { // Broken and said so; any other exception fails the test
+					assertTrue(e.getMessage() != null);
+				}
+			}
+		}
+		Files.write(broken.toPath(), new byte[] { 'n', 'o', 't', ' ', 'a', 'n', ' ', 'L', '-', 's', 'y', 's', 't', 'e', 'm', '!' });
+		assertThrows(IOException.class, () -> LindenmayerFile.open(broken));
+	}
+
+	/**
+	 * Builds a model with plain, weighted and context rules, and a seed.
+	 * @param axiom -- the axiom of the model
+	 * @return the model
+	 */
+	private static LindenmayerModel model(String axiom) {
+		LindenmayerModel model = new LindenmayerModel();
+		model.beginUpdate();
+		model.setOrigin(120, 340);
+		model.setIterations(5);
+		model.setAngle(25);
+		model.setAxiom(axiom);
+		model.setMap('G', "GG");
+		model.addProduction(Production.parse("F:2", "F[+F]F"));
+		model.addProduction(Production.parse("[<F", "FF"));
+		model.setSeed(42);
+		return model;
+	}
+
+	/**
+	 * Checks that the inputs stored in a file are those of the model it was written from.
+	 * @param model -- the model the file was written from
+	 * @param saved -- the file
+	 */
+	private static void assertSameInputs(LindenmayerModel model, LindenmayerFile saved) {
+		LindenmayerModel loaded = new LindenmayerModel();
+		saved.load(loaded);
+		assertEquals(model.getX(), loaded.getX());
+		assertEquals(model.getY(), loaded.getY());
+		assertEquals(model.getIterations(), loaded.getIterations());
+		assertEquals(model.getAngle(), loaded.getAngle());
+		assertEquals(model.getAxiom(), loaded.getAxiom());
+		assertEquals(model.getKey(), loaded.getKey());
+		assertEquals(model.getVal('G'), loaded.getVal('G'));
+		assertEquals(model.getSeed(), loaded.getSeed());
+		assertEquals(model.getProductions().toString(), loaded.getProductions().toString());
+	}
+
+	/**
+	 * Builds line strokes with a jump between two polylines.
+	 * @return the line strokes
+	 */
+	private static SegmentBuffer segments() {
+		SegmentBuffer segments = new SegmentBuffer();
+		segments.line(0, 0, 0, -15);
+		segments.line(0, -15, 6.34, -28.6);
+		segments.line(0, -15, -6.34, -28.6);
+		segments.line(-6.34, -28.6, -1e-7, 1e7);
+		return segments;
+	}
+
+	/**
+	 * Reads where the data of a file starts.
+	 * @param file -- the file
+	 * @return the size of its header in bytes
+	 * @throws IOException if the file cannot be read
+	 */
+	private static int headerSize(File file) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			in.seek(12);
+			return in.readInt();
+		}
+	}
+
+	/**
+	 * Wraps a string in a cursor.
+	 * @param symbols -- the string
+	 * @return a cursor over its symbols
+	 */
+	private static SymbolCursor cursor(String symbols) {
+		return new SymbolSequence(symbols.toCharArray(), symbols.length()).cursor();
+	}
+
+	/**
+	 * Reads every symbol of a cursor.
+	 * @param symbols -- the cursor
+	 * @return the symbols as a string
+	 */
+	private static String read(SymbolCursor symbols) {
+		StringBuilder out = new StringBuilder();
+		while (symbols.hasNext()) {
+			out.append(symbols.next());
+		}
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,74 @@
+package controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+import model.LindenmayerModel;
+import model.Production;
+/**
+ * Checks that a seeded stochastic, context-sensitive L-system rewrites to the same string
+ * whether its iterations are replaced in chunks on a pool or on the calling thread.
+ */
+public class RewriterTest {
+
+	private static final String AXIOM = "F+G-".repeat(300);
+
+	private static final int ITERATIONS = 8;
+
+	@Test
+	public void parallelMatchesSequential() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (long seed = 0; seed < 4; seed++) {
+				ProductionTable table = new ProductionTable(model(seed));
+				Rewriter sequential = new Rewriter();
+				sequential.setParallelism(pool, Integer.MAX_VALUE);
+				sequential.rewrite(table, AXIOM, ITERATIONS);
+				Rewriter parallel = new Rewriter();
+				parallel.setParallelism(pool, 1);
+				parallel.rewrite(table, AXIOM, ITERATIONS);
+				// Long enough that the last iterations are split into several chunks
+				assertTrue(sequential.getLength() > 4 * (1 << 16), "length " + sequential.getLength());
+				assertEquals(new String(sequential.getSymbols(), 0, sequential.getLength()),
+						new String(parallel.getSymbols(), 0, parallel.getLength()), "seed " + seed);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void seedChangesResult() {
+		Rewriter first = new Rewriter();
+		first.rewrite(new ProductionTable(model(1)), AXIOM, 4);
+		Rewriter second = new Rewriter();
+		second.rewrite(new ProductionTable(model(2)), AXIOM, 4);
+		assertTrue(!new String(first.getSymbols(), 0, first.getLength()).equals(
+				new String(second.getSymbols(), 0, second.getLength())), "seeds 1 and 2 rewrote alike");
+	}
+
+	/**
+	 * Builds a model with weighted alternatives for F, and rules that only apply next to a bracket.
+	 * @param seed -- the seed of the random choices
+	 * @return the model
+	 */
+	private static LindenmayerModel model(long seed) {
+		LindenmayerModel model = new LindenmayerModel();
+		model.beginUpdate();
+		model.setOrigin(0, 0);
+		model.setAngle(25);
+		model.setAxiom("F");
+		model.addProduction(Production.parse("F:1", "F[+F]F[-F]F"));
+		model.addProduction(Production.parse("F:1", "F[+F]F"));
+		model.addProduction(Production.parse("F:2", "F[-F]F"));
+		model.addProduction(Production.parse("[<F", "G"));
+		model.addProduction(Production.parse("F>]:3", "FF"));
+		model.setMap('G', "GF");
+		model.setSeed(seed);
+		return model;
+	}
+
+}
@@ -0,0 +1,125 @@
+package graphics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.SymbolSequence;
+/**
+ * Checks that ParallelInterpreter stores exactly the line strokes, and leaves the turtle in exactly the state,
+ * of a single TurtleGraphics reading the same symbols from left to right.
+ * The threshold is low so every input is split into many chunks.
+ */
+public class ParallelInterpreterTest {
+
+	private static final int THRESHOLD = 1000;
+
+	private static ForkJoinPool pool;
+
+	@BeforeAll
+	public static void start() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterAll
+	public static void stop() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void bracketedPlant() {
+		String plant = expand("X", 'X', "F[+X]F[-X]+X", 'F', "FF", 8);
+		assertSameDrawing(plant, 25, "");
+	}
+
+	@Test
+	public void kochCurve() {
+		String koch = expand("F", 'F', "F+F-F-F+F", 'G', "G", 7);
+		assertSameDrawing(koch, 90, "");
+	}
+
+	@Test
+	public void unbalancedBrackets() {
+		Random random = new Random(7);
+		String[] alphabets = { "F+-[]G", "FFF++--[[]]X", "F+F-[F]]]][[[[" };
+		int[] angles = { 90, 25, 60, 7, 1, 0, 360, 45, 13 };
+		for (int trial = 0; trial < 12; trial++) {
+			String alphabet = alphabets[trial % alphabets.length];
+			char[] symbols = new char[50_000 + random.nextInt(150_000)];
+			for (int i = 0; i < symbols.length; i++) {
+				symbols[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+			}
+			// Every other trial starts with states already stored, which the chunks' ']' may restore
+			assertSameDrawing(new String(symbols), angles[trial % angles.length], trial % 2 == 0 ? "F[+F" : "");
+		}
+	}
+
+	/**
+	 * Draws the symbols once on a single turtle and once on the pool, and compares the results bit for bit.
+	 * @param symbols -- the symbols being drawn
+	 * @param angle -- the angle of the turtle
+	 * @param prefix -- symbols both turtles draw on their own first
+	 */
+	private static void assertSameDrawing(String symbols, int angle, String prefix) {
+		byte[] commands = TurtleGraphics.commands(128);
+		SymbolSequence sequence = new SymbolSequence(symbols.toCharArray(), symbols.length());
+		TurtleGraphics sequential = new TurtleGraphics(-12.5, 40, angle);
+		TurtleGraphics parallel = new TurtleGraphics(-12.5, 40, angle);
+		OffHeapSegments expected = new OffHeapSegments();
+		OffHeapSegments actual = new OffHeapSegments();
+		try {
+			sequential.draw(new SymbolSequence(prefix.toCharArray(), prefix.length()).cursor(), commands, expected);
+			parallel.draw(new SymbolSequence(prefix.toCharArray(), prefix.length()).cursor(), commands, actual);
+			sequential.draw(sequence.cursor(), commands, expected);
+			new ParallelInterpreter(pool, THRESHOLD).draw(parallel, sequence, commands, actual, () -> false);
+			assertEquals(expected.getSize(), actual.getSize(), "stored floats");
+			assertEquals(expected.getCount(), actual.getCount(), "stored lines");
+			for (int i = 0; i < expected.getSize(); i++) {
+				if (Float.floatToRawIntBits(expected.get(i)) != Float.floatToRawIntBits(actual.get(i))) {
+					assertEquals(expected.get(i), actual.get(i), "float " + i);
+				}
+			}
+			assertEquals(sequential.getX(), parallel.getX(), "x");
+			assertEquals(sequential.getY(), parallel.getY(), "y");
+			assertEquals(sequential.getRotations(), parallel.getRotations(), "rotations");
+			assertEquals(sequential.getDepth(), parallel.getDepth(), "depth");
+			assertEquals(sequential.getMaxDepth(), parallel.getMaxDepth(), "max depth");
+			// The stored states must match too, so restoring past the drawn symbols ends in the same place
+			String pops = "]]]F]F]F";
+			sequential.draw(new SymbolSequence(pops.toCharArray(), pops.length()).cursor(), commands, expected);
+			parallel.draw(new SymbolSequence(pops.toCharArray(), pops.length()).cursor(), commands, actual);
+			assertEquals(sequential.getX(), parallel.getX(), "x after restoring");
+			assertEquals(sequential.getY(), parallel.getY(), "y after restoring");
+		} finally {
+			expected.free();
+			actual.free();
+		}
+	}
+
+	/**
+	 * Rewrites a string with two replacements, leaving every other symbol as it is.
+	 * @param axiom -- the string being modified
+	 * @param first -- the first symbol replaced
+	 * @param firstRule -- what the first symbol is replaced by
+	 * @param second -- the second symbol replaced
+	 * @param secondRule -- what the second symbol is replaced by
+	 * @param iterations -- how many times the string is modified
+	 * @return the modified string
+	 */
+	private static String expand(String axiom, char first, String firstRule, char second, String secondRule, int iterations) {
+		String ls = axiom;
+		for (int i = 0; i < iterations; i++) {
+			StringBuilder next = new StringBuilder();
+			for (char c : ls.toCharArray()) {
+				next.append(c == first ? firstRule : c == second ? secondRule : String.valueOf(c));
+			}
+			ls = next.toString();
+		}
+		return ls;
+	}
+
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/**
+ * This class runs the benchmarks and writes their results as JSON, so they can be compared from run to run.
+ * It takes the usual JMH options; unless they say otherwise, results go to jmh-result.json and
+ * the GC profiler is on, so every benchmark also reports how many bytes one operation allocates.
+ * <pre>java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regex]</pre>
+ * @author Benhur J. Tadiparti
+ */
+public class BenchmarkMain {
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args -- JMH command line options
+	 * @throws Exception if the options cannot be read or the benchmarks cannot be run
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if (!options.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!options.getResult().hasValue()) {
+			builder.result("jmh-result.json");
+		}
+		if (options.getProfilers().isEmpty()) {
+			builder.addProfiler(GCProfiler.class);
+		}
+		new Runner(builder.build()).run();
+	}
+
+}
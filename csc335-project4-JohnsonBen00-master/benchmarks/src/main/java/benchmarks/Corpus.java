@@ -0,0 +1,55 @@
+package benchmarks;
+
+import model.LindenmayerModel;
+/**
+ * This class is the standard set of L-systems every benchmark runs on.
+ * A system is named as "name:iterations", so one JMH parameter picks both the grammar and how deep it is expanded.
+ * @author Benhur J. Tadiparti
+ */
+public class Corpus {
+
+	/**
+	 * Builds the inputs of a system of the corpus.
+	 * @param system -- the name of the system and its iterations, as in "koch:6"
+	 * @return the model holding the system's axiom, rules, angle and iterations
+	 * @throws IllegalArgumentException if the corpus has no system with that name
+	 */
+	public static LindenmayerModel model(String system) {
+		int colon = system.indexOf(':');
+		String name = colon < 0 ? system : system.substring(0, colon);
+		LindenmayerModel model = new LindenmayerModel();
+		model.beginUpdate();
+		model.setOrigin(0, 0);
+		switch (name) {
+		case "koch": // Quadratic Koch island
+			model.setAxiom("F-F-F-F");
+			model.setMap('F', "F-F+F+FF-F-F+F");
+			model.setAngle(90);
+			break;
+		case "dragon":
+			model.setAxiom("FX");
+			model.setMap('X', "X+YF+");
+			model.setMap('Y', "-FX-Y");
+			model.setAngle(90);
+			break;
+		case "sierpinski":
+			model.setAxiom("F-G-G");
+			model.setMap('F', "F-G+F+G-F");
+			model.setMap('G', "GG");
+			model.setAngle(120);
+			break;
+		case "plant": // Bracketed plant, so the turtle saves and restores its state
+			model.setAxiom("X");
+			model.setMap('X', "F+[[X]-X]-F[-FX]+X");
+			model.setMap('F', "FF");
+			model.setAngle(25);
+			break;
+		default:
+			throw new IllegalArgumentException("The corpus has no system named " + name);
+		}
+		model.setIterations(colon < 0 ? 4 : Integer.parseInt(system.substring(colon + 1)));
+		model.commit();
+		return model;
+	}
+
+}
@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.LindenmayerController;
+import controller.ProductionTable;
+import controller.Rewriter;
+import model.LindenmayerModel;
+import model.SymbolSequence;
+/**
+ * This class measures how fast the L-system string is computed.
+ * finalString computes every iteration from the axiom, as the viewer does, with the cache turned off;
+ * generation computes only the last iteration from the one before it, so with the GC profiler
+ * its allocation per operation is the allocation of one generation.
+ * The symbols counter turns both into symbols per second.
+ * @author Benhur J. Tadiparti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpansionBenchmark {
+
+	@Param({ "koch:4", "koch:6", "dragon:12", "dragon:16", "sierpinski:7", "sierpinski:10", "plant:5", "plant:7" })
+	public String system;
+
+	private LindenmayerModel model;
+	private LindenmayerController control;
+	private ProductionTable table;
+	private Rewriter rewriter;
+	private SymbolSequence previous;
+
+	/**
+	 * Compiles the system, and computes the iteration before its last one.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.model = Corpus.model(this.system);
+		this.control = new LindenmayerController(this.model);
+		this.control.setCacheCapacity(0); // Every call computes the string again
+		this.control.setStreamThreshold(Long.MAX_VALUE); // Every string is stored in the model
+		this.table = this.control.getTable();
+		this.rewriter = new Rewriter();
+		this.rewriter.rewrite(this.table, this.model.getAxiom(), this.model.getIterations() - 1);
+		this.previous = new SymbolSequence(this.rewriter.detach(), this.rewriter.getLength());
+	}
+
+	/**
+	 * Computes the final string from the axiom and stores it in the model.
+	 * @param counter -- counts the symbols computed
+	 * @return the length of the final string
+	 */
+	@Benchmark
+	public int finalString(Symbols counter) {
+		this.control.getFinalString(this.model.getAxiom(), 0);
+		int length = this.model.getResult().length();
+		counter.symbols += length;
+		return length;
+	}
+
+	/**
+	 * Computes the last iteration of the string from the one before it.
+	 * @param counter -- counts the symbols computed
+	 * @return the length of the last iteration
+	 */
+	@Benchmark
+	public int generation(Symbols counter) {
+		this.rewriter.rewrite(this.table, this.previous, this.model.getIterations() - 1, 1, null);
+		int length = this.rewriter.getLength();
+		counter.symbols += length;
+		return length;
+	}
+
+	/**
+	 * This class counts the symbols computed, which JMH reports as symbols per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Symbols {
+
+		public long symbols;
+
+		/**
+		 * Starts every iteration of the measurement from zero.
+		 */
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.symbols = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.LindenmayerController;
+import graphics.SegmentBuffer;
+import graphics.SegmentGrid;
+import graphics.TileRasterizer;
+import graphics.TurtleGraphics;
+import model.LindenmayerModel;
+/**
+ * This class measures the cost of turning line strokes into pixels without a display.
+ * grid indexes the line strokes into cells, as the viewer does before it draws its tiles;
+ * raster draws them into a PNG image with the tiled rasterizer of the batch renderer.
+ * The JavaFX canvas the viewer draws on needs a display, so these are the parts of drawing that can be timed headless.
+ * @author Benhur J. Tadiparti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+	/** The width and height of the image, and of the area the grid indexes. */
+	private static final int SIZE = 2048;
+
+	/** The width and height of a cell of the grid, in pixels, the same as the viewer's tiles. */
+	private static final int CELL = 512;
+
+	@Param({ "koch:4", "koch:6", "dragon:12", "dragon:16", "sierpinski:7", "sierpinski:10", "plant:5", "plant:7" })
+	public String system;
+
+	private SegmentBuffer segments;
+	private ExecutorService tiles;
+	private double left;
+	private double top;
+	private double scale;
+
+	/**
+	 * Computes the line strokes of the system once, and fits them in the image.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		LindenmayerModel model = Corpus.model(this.system);
+		LindenmayerController control = new LindenmayerController(model);
+		this.segments = new SegmentBuffer();
+		new TurtleGraphics(model).draw(control.expand(), control.getTable().getCommands(), this.segments);
+		double[] bounds = this.segments.getBounds();
+		this.scale = SIZE / Math.max(1e-9, Math.max(bounds[2] - bounds[0], bounds[3] - bounds[1]));
+		this.left = bounds[0];
+		this.top = bounds[1];
+		this.tiles = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Stops the threads that draw the tiles.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.tiles.shutdownNow();
+	}
+
+	/**
+	 * Indexes the line strokes into cells over the area they were fitted in, and frees the index.
+	 * @return the number of entries in the index
+	 */
+	@Benchmark
+	public int grid() {
+		SegmentGrid grid = new SegmentGrid(this.segments, this.left, this.top, CELL / this.scale, SIZE / CELL, SIZE / CELL); // The area raster() draws
+		int entries = grid.end(grid.getColumns() - 1, grid.getRows() - 1);
+		grid.free();
+		return entries;
+	}
+
+	/**
+	 * Draws the line strokes into a PNG image that is thrown away.
+	 * @return the number of bytes of the image
+	 * @throws IOException if the image cannot be written
+	 */
+	@Benchmark
+	public long raster() throws IOException {
+		Counter out = new Counter();
+		new TileRasterizer(this.tiles, TileRasterizer.DEFAULT_TILE).render(this.segments, this.left, this.top, this.scale, SIZE, SIZE, out);
+		return out.bytes;
+	}
+
+	/**
+	 * This class is a stream that only counts the bytes written to it.
+	 */
+	private static class Counter extends OutputStream {
+
+		private long bytes;
+
+		@Override
+		public void write(int b) {
+			this.bytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.bytes += len;
+		}
+
+	}
+
+}
@@ -0,0 +1,151 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import controller.LindenmayerController;
+import controller.ProductionTable;
+import graphics.OffHeapSegments;
+import graphics.ParallelInterpreter;
+import graphics.SegmentBuffer;
+import graphics.TurtleGraphics;
+import model.LindenmayerModel;
+import model.SymbolSequence;
+/**
+ * This class measures how fast the turtle reads a final string that is already computed.
+ * lines sends every line stroke to a sink that only consumes it, which is the cost of the turtle alone;
+ * buffer also stores them on the heap, and offHeap stores them in direct buffers, as the viewer and the batch renderer do.
+ * parallel stores them in direct buffers as well, reading the string on every core with ParallelInterpreter.
+ * The segments counter turns both into line strokes per second, the inverse of the cost per segment.
+ * @author Benhur J. Tadiparti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TurtleBenchmark {
+
+	@Param({ "koch:4", "koch:6", "dragon:12", "dragon:16", "sierpinski:7", "sierpinski:10", "plant:5", "plant:7" })
+	public String system;
+
+	private LindenmayerModel model;
+	private ProductionTable table;
+	private SymbolSequence symbols;
+	private SegmentBuffer buffer;
+	private OffHeapSegments offHeap;
+
+	/**
+	 * Computes the final string of the system once.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.model = Corpus.model(this.system);
+		LindenmayerController control = new LindenmayerController(this.model);
+		control.setStreamThreshold(Long.MAX_VALUE);
+		this.table = control.getTable();
+		control.getFinalString(this.model.getAxiom(), 0);
+		this.symbols = this.model.getResult();
+		this.buffer = new SegmentBuffer();
+		this.offHeap = new OffHeapSegments();
+	}
+
+	/**
+	 * Gives back the memory the off-heap store took.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.offHeap.free();
+	}
+
+	/**
+	 * Reads the final string, consuming every line stroke.
+	 * @param counter -- counts the line strokes drawn
+	 * @param hole -- consumes the line strokes so they are not optimized away
+	 */
+	@Benchmark
+	public void lines(Segments counter, Blackhole hole) {
+		TurtleGraphics graphics = new TurtleGraphics(this.model);
+		graphics.draw(this.symbols.cursor(), this.table.getCommands(), (x1, y1, x2, y2) -> {
+			hole.consume(x2);
+			hole.consume(y2);
+			counter.segments++;
+		});
+	}
+
+	/**
+	 * Reads the final string, storing every line stroke.
+	 * @param counter -- counts the line strokes drawn
+	 * @return the stored line strokes
+	 */
+	@Benchmark
+	public SegmentBuffer buffer(Segments counter) {
+		this.buffer.clear();
+		new TurtleGraphics(this.model).draw(this.symbols.cursor(), this.table.getCommands(), this.buffer);
+		counter.segments += this.buffer.getCount();
+		return this.buffer;
+	}
+
+	/**
+	 * Reads the final string, storing every line stroke outside of the heap.
+	 * @param counter -- counts the line strokes drawn
+	 * @return the stored line strokes
+	 */
+	@Benchmark
+	public OffHeapSegments offHeap(Segments counter) {
+		this.offHeap.clear();
+		new TurtleGraphics(this.model).draw(this.symbols.cursor(), this.table.getCommands(), this.offHeap);
+		counter.segments += this.offHeap.getCount();
+		return this.offHeap;
+	}
+
+	/**
+	 * Reads the final string on every core, storing every line stroke outside of the heap.
+	 * Strings shorter than the parallel threshold are read by a single turtle.
+	 * @param counter -- counts the line strokes drawn
+	 * @return the stored line strokes
+	 */
+	@Benchmark
+	public OffHeapSegments parallel(Segments counter) {
+		this.offHeap.clear();
+		new ParallelInterpreter().draw(new TurtleGraphics(this.model), this.symbols, this.table.getCommands(), this.offHeap, () -> false);
+		counter.segments += this.offHeap.getCount();
+		return this.offHeap;
+	}
+
+	/**
+	 * This class counts the line strokes drawn, which JMH reports as line strokes per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Segments {
+
+		public long segments;
+
+		/**
+		 * Starts every iteration of the measurement from zero.
+		 */
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.segments = 0;
+		}
+
+	}
+
+}
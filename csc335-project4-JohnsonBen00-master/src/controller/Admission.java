@@ -0,0 +1,109 @@
+package controller;
+/**
+ * This class is what the GrowthAnalyzer decided about an L-system before it is expanded:
+ * draw it as asked, stream it, clamp it to fewer iterations, or reject it, with the cost it predicted.
+ * @author Benhur J. Tadiparti
+ */
+public class Admission {
+
+	/** What is done with the L-system: draw it, stream it, draw fewer iterations of it, or nothing. */
+	public static final int ACCEPT = 0, STREAM = 1, CLAMP = 2, REJECT = 3;
+
+	private final int action;
+	private final int iterations;
+	private final long length;
+	private final long segments;
+	private final boolean exact;
+
+	/**
+	 * Initializes the fields required.
+	 * @param action -- ACCEPT, STREAM, CLAMP or REJECT
+	 * @param iterations -- the iterations that are drawn, or the iterations asked for if the L-system is rejected
+	 * @param length -- the predicted length of the final string at those iterations
+	 * @param segments -- the predicted number of line strokes at those iterations
+	 * @param exact -- true if the predictions are exact, false if they are the most the L-system can reach
+	 */
+	public Admission(int action, int iterations, long length, long segments, boolean exact) {
+		this.action = action;
+		this.iterations = iterations;
+		this.length = length;
+		this.segments = segments;
+		this.exact = exact;
+	}
+
+	/**
+	 * Returns what is done with the L-system.
+	 * @return ACCEPT, STREAM, CLAMP or REJECT
+	 */
+	public int getAction() {
+		return this.action;
+	}
+
+	/**
+	 * Checks if the L-system is drawn at all.
+	 * @return false if it is rejected, else true
+	 */
+	public boolean isAdmitted() {
+		return this.action != REJECT;
+	}
+
+	/**
+	 * Returns the iterations that are drawn.
+	 * @return the iterations asked for, or fewer if the L-system is clamped
+	 */
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	/**
+	 * Returns the predicted length of the final string.
+	 * @return the number of symbols, or Long.MAX_VALUE if it does not fit in a long
+	 */
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the predicted number of line strokes.
+	 * @return the number of line strokes, or Long.MAX_VALUE if it does not fit in a long
+	 */
+	public long getSegments() {
+		return this.segments;
+	}
+
+	/**
+	 * Checks if the predictions are exact.
+	 * @return true if they are exact, false if they are upper bounds because a replacement depends on chance or context
+	 */
+	public boolean isExact() {
+		return this.exact;
+	}
+
+	@Override
+	/**
+	 * Returns the decision and the predicted cost written out for the user
+	 */
+	public String toString() {
+		String cost = (this.exact ? "" : "at most ") + count(this.length) + " symbols, " + count(this.segments) + " lines";
+		switch (this.action) {
+		case STREAM:
+			return cost + " (streamed)";
+		case CLAMP:
+			return "Clamped to " + this.iterations + " iterations: " + cost;
+		case REJECT:
+			return "Too large to draw: " + cost;
+		default:
+			return cost;
+		}
+	}
+
+	/**
+	 * Writes a count with separators, or as too large if it does not fit in a long.
+	 * @param n -- the count
+	 * @return the count written out
+	 */
+	private static String count(long n) {
+		return n == Long.MAX_VALUE ? "over 9.2e18" : String.format("%,d", n);
+	}
+
+}
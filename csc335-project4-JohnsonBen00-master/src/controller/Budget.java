@@ -0,0 +1,63 @@
+package controller;
+/**
+ * This class is how large an L-system is allowed to grow before it is drawn.
+ * An L-system over the budget is either clamped to the deepest iteration that fits, or rejected.
+ * @author Benhur J. Tadiparti
+ */
+public class Budget {
+
+	/** The default most symbols: about a billion, several seconds of streaming. */
+	public static final long DEFAULT_SYMBOLS = 1L << 30;
+
+	/** The default most line strokes: 32 million, half a gigabyte of coordinates. */
+	public static final long DEFAULT_SEGMENTS = 1L << 25;
+
+	private long symbols;
+	private long segments;
+	private boolean clamp;
+
+	/**
+	 * Initializes the fields required.
+	 * @param symbols -- the most symbols the final string may have
+	 * @param segments -- the most line strokes the turtle may draw
+	 * @param clamp -- true to clamp an L-system over the budget to fewer iterations, false to reject it
+	 */
+	public Budget(long symbols, long segments, boolean clamp) {
+		this.symbols = symbols;
+		this.segments = segments;
+		this.clamp = clamp;
+	}
+
+	/**
+	 * Returns the budget the controller starts with, which clamps.
+	 * @return the default budget
+	 */
+	public static Budget defaults() {
+		return new Budget(DEFAULT_SYMBOLS, DEFAULT_SEGMENTS, true);
+	}
+
+	/**
+	 * Returns the most symbols the final string may have.
+	 * @return the most symbols
+	 */
+	public long getSymbols() {
+		return this.symbols;
+	}
+
+	/**
+	 * Returns the most line strokes the turtle may draw.
+	 * @return the most line strokes
+	 */
+	public long getSegments() {
+		return this.segments;
+	}
+
+	/**
+	 * Checks if an L-system over the budget is clamped instead of rejected.
+	 * @return true if it is clamped, false if it is rejected
+	 */
+	public boolean isClamp() {
+		return this.clamp;
+	}
+
+}
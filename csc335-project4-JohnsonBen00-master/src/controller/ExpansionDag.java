@@ -0,0 +1,250 @@
+package controller;
+
+import java.util.HashMap;
+
+import graphics.TurtleGraphics;
+/**
+ * This class describes the final L-system string without building it.
+ * The expansion of a symbol with a number of iterations left is the same wherever it appears,
+ * so every (symbol, iterations left) pair is a single node shared by all of its parents.
+ * Lengths, line counts, how far the turtle moves and the box it draws in are computed once per node,
+ * which makes them exponentially cheaper than reading the final string.
+ * @author Benhur J. Tadiparti
+ */
+public class ExpansionDag {
+
+	/** Indexes into a summary: how far the turtle moves, how far it turns, and the box it draws in. */
+	private static final int DX = 0, DY = 1, TURN = 2, MIN_X = 3, MIN_Y = 4, MAX_X = 5, MAX_Y = 6;
+
+	private ProductionTable table;
+	private HashMap<Long, Node> nodes;
+	private int headings;
+	private double[] dx;
+	private double[] dy;
+
+	/**
+	 * Initializes the fields required.
+	 * @param table -- the replacements of the L-system
+	 * @param angle -- the angle the turtle turns by
+	 * @throws IllegalArgumentException if a replacement does not close every bracket it opens,
+	 * or depends on chance or context
+	 */
+	public ExpansionDag(ProductionTable table, int angle) {
+		if (!table.isSimple()) {
+			throw new IllegalArgumentException("Every replacement must be the same wherever its symbol is");
+		}
+		if (!table.isBalanced()) {
+			throw new IllegalArgumentException("Every replacement must close the brackets it opens");
+		}
+		this.table = table;
+		this.nodes = new HashMap<>();
+		this.headings = TurtleGraphics.headings(angle); // The turtle can only face multiples of the angle
+		this.dx = new double[this.headings];
+		this.dy = new double[this.headings];
+		for (int h = 0; h < this.headings; h++) {
+			double rotations = Math.toRadians((double) h * angle % 360);
+			this.dx[h] = TurtleGraphics.STEP * Math.sin(rotations);
+			this.dy[h] = TurtleGraphics.STEP * Math.cos(rotations);
+		}
+	}
+
+	/**
+	 * Returns the length of the final string.
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @return the number of symbols in the final string, or Long.MAX_VALUE if it does not fit in a long
+	 */
+	public long length(String ls, int iterations) {
+		long total = 0;
+		for (int i = 0; i < ls.length(); i++) {
+			total = add(total, node(ls.charAt(i), iterations).length);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns how many lines the turtle draws for the final string.
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @return the number of 'F' and 'G' symbols in the final string, or Long.MAX_VALUE if it does not fit in a long
+	 */
+	public long segments(String ls, int iterations) {
+		long total = 0;
+		for (int i = 0; i < ls.length(); i++) {
+			total = add(total, node(ls.charAt(i), iterations).segments);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the box the turtle draws the final string in, with '[' saving and ']' restoring
+	 * the turtle's position and turning angle.
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @param x -- the x coordinate the turtle starts at
+	 * @param y -- the y coordinate the turtle starts at
+	 * @return the smallest x, smallest y, largest x and largest y the turtle reaches
+	 */
+	public double[] extent(String ls, int iterations, double x, double y) {
+		Node[] children = new Node[ls.length()];
+		for (int i = 0; i < ls.length(); i++) {
+			children[i] = node(ls.charAt(i), iterations);
+		}
+		double[] box = walk(children, 0);
+		return new double[] { x + box[MIN_X], y + box[MIN_Y], x + box[MAX_X], y + box[MAX_Y] };
+	}
+
+	/**
+	 * Returns how many distinct nodes the description has needed so far.
+	 * @return the number of shared nodes
+	 */
+	public int size() {
+		return this.nodes.size();
+	}
+
+	/**
+	 * Returns the shared node of a symbol with a number of iterations left, creating it if needed.
+	 * @param c -- the symbol
+	 * @param depth -- the iterations left to make to the symbol
+	 * @return the node of the symbol
+	 */
+	private Node node(char c, int depth) {
+		char[] replace = depth > 0 ? this.table.get(c) : null;
+		if (replace == null) {
+			depth = 0; // A symbol that is copied unchanged is the same leaf at every depth
+		}
+		Long key = ((long) c << 32) | depth;
+		Node node = this.nodes.get(key);
+		if (node == null) {
+			node = new Node(c, replace == null ? null : new Node[replace.length], this.headings);
+			if (replace == null) {
+				node.length = 1;
+				node.segments = this.table.command(c) == TurtleGraphics.DRAW ? 1 : 0;
+			} else {
+				for (int i = 0; i < replace.length; i++) {
+					node.children[i] = node(replace[i], depth - 1);
+					node.length = add(node.length, node.children[i].length);
+					node.segments = add(node.segments, node.children[i].segments);
+				}
+			}
+			this.nodes.put(key, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Returns how the turtle moves when it reads a node, starting at a heading.
+	 * @param node -- the node being read
+	 * @param heading -- the index of the heading the turtle starts at
+	 * @return the summary of the node, relative to where the turtle starts
+	 */
+	private double[] summary(Node node, int heading) {
+		if (node.summaries[heading] == null) {
+			node.summaries[heading] = node.children == null ? leaf(node.symbol, heading) : walk(node.children, heading);
+		}
+		return node.summaries[heading];
+	}
+
+	/**
+	 * Returns how the turtle moves when it reads a single symbol.
+	 * @param c -- the symbol
+	 * @param heading -- the index of the heading the turtle starts at
+	 * @return the summary of the symbol
+	 */
+	private double[] leaf(char c, int heading) {
+		double[] summary = new double[7];
+		byte command = this.table.command(c);
+		if (command == TurtleGraphics.DRAW) {
+			summary[DX] = this.dx[heading];
+			summary[DY] = this.dy[heading];
+		} else if (command == TurtleGraphics.LEFT) {
+			summary[TURN] = 1;
+		} else if (command == TurtleGraphics.RIGHT) {
+			summary[TURN] = -1;
+		}
+		summary[MIN_X] = Math.min(0, summary[DX]);
+		summary[MIN_Y] = Math.min(0, summary[DY]);
+		summary[MAX_X] = Math.max(0, summary[DX]);
+		summary[MAX_Y] = Math.max(0, summary[DY]);
+		return summary;
+	}
+
+	/**
+	 * Returns how the turtle moves when it reads a row of nodes, saving its state at '[' and restoring it at ']'.
+	 * @param children -- the nodes being read
+	 * @param heading -- the index of the heading the turtle starts at
+	 * @return the summary of the row
+	 */
+	private double[] walk(Node[] children, int heading) {
+		double[] result = new double[7];
+		double[] stack = new double[children.length * 3];
+		int top = 0;
+		double x = 0;
+		double y = 0;
+		int h = heading;
+		for (Node child : children) {
+			byte command = child.children == null ? this.table.command(child.symbol) : TurtleGraphics.NONE;
+			if (command == TurtleGraphics.PUSH) {
+				stack[top++] = x;
+				stack[top++] = y;
+				stack[top++] = h;
+			} else if (command == TurtleGraphics.POP) {
+				if (top > 0) {
+					h = (int) stack[--top];
+					y = stack[--top];
+					x = stack[--top];
+				}
+			} else {
+				double[] summary = summary(child, h);
+				result[MIN_X] = Math.min(result[MIN_X], x + summary[MIN_X]);
+				result[MIN_Y] = Math.min(result[MIN_Y], y + summary[MIN_Y]);
+				result[MAX_X] = Math.max(result[MAX_X], x + summary[MAX_X]);
+				result[MAX_Y] = Math.max(result[MAX_Y], y + summary[MAX_Y]);
+				x += summary[DX];
+				y += summary[DY];
+				h = Math.floorMod(h + (int) summary[TURN], this.headings);
+			}
+		}
+		result[DX] = x;
+		result[DY] = y;
+		result[TURN] = Math.floorMod(h - heading, this.headings);
+		return result;
+	}
+
+	/**
+	 * Adds two counts, stopping at Long.MAX_VALUE instead of overflowing.
+	 * @param a -- the first count
+	 * @param b -- the second count
+	 * @return the sum of the counts
+	 */
+	private static long add(long a, long b) {
+		return Long.MAX_VALUE - a < b ? Long.MAX_VALUE : a + b;
+	}
+
+	/**
+	 * This class is a symbol with a number of iterations left. Its children are the nodes of its
+	 * replacement with one iteration less, or null if the symbol is copied unchanged.
+	 */
+	private static class Node {
+
+		private char symbol;
+		private Node[] children;
+		private long length;
+		private long segments;
+		private double[][] summaries;
+
+		/**
+		 * Initializes the fields required.
+		 * @param symbol -- the symbol of the node
+		 * @param children -- the nodes of the symbol's replacement, or null
+		 * @param headings -- the number of headings the turtle can face
+		 */
+		Node(char symbol, Node[] children, int headings) {
+			this.symbol = symbol;
+			this.children = children;
+			this.summaries = new double[headings][];
+		}
+
+	}
+
+}
@@ -0,0 +1,18 @@
+package controller;
+/**
+ * This interface is an arithmetic expression of a parametric L-system. Expressions are compiled once
+ * into nested lambdas, so evaluating one never reads its text again.
+ * @author Benhur J. Tadiparti
+ */
+@FunctionalInterface
+public interface Expression {
+
+	/**
+	 * Evaluates the expression for one symbol of the string.
+	 * @param params -- the parameters of every symbol in the string
+	 * @param base -- where the parameters of the symbol being replaced start in params
+	 * @return the value of the expression, where 0 is false and anything else is true
+	 */
+	double evaluate(double[] params, int base);
+
+}
@@ -0,0 +1,283 @@
+package controller;
+
+import java.util.List;
+/**
+ * This class compiles the text of an expression into an Expression.
+ * Expressions have numbers, the parameters of the symbol being replaced, parentheses, and the operators
+ * ^, * /, + -, &lt; &lt;= &gt; &gt;= == !=, !, &amp;&amp; and ||, from the first to bind to the last.
+ * Parts of an expression that do not use a parameter are computed while compiling.
+ * @author Benhur J. Tadiparti
+ */
+public class ExpressionCompiler {
+
+	private String text;
+	private int position;
+	private List<String> names;
+
+	/**
+	 * Initializes the fields required.
+	 * @param text -- the text being compiled
+	 * @param position -- where the expression starts in the text
+	 * @param names -- the names of the parameters, in the order they are stored
+	 */
+	public ExpressionCompiler(String text, int position, List<String> names) {
+		this.text = text;
+		this.position = position;
+		this.names = names;
+	}
+
+	/**
+	 * Compiles a whole string as one expression.
+	 * @param text -- the expression
+	 * @param names -- the names of the parameters, in the order they are stored
+	 * @return the compiled expression
+	 * @throws IllegalArgumentException if the text is not an expression
+	 */
+	public static Expression compile(String text, List<String> names) {
+		ExpressionCompiler compiler = new ExpressionCompiler(text, 0, names);
+		Expression expression = compiler.parse();
+		if (compiler.position < text.length()) {
+			throw compiler.error("Unexpected " + text.charAt(compiler.position));
+		}
+		return expression;
+	}
+
+	/**
+	 * Compiles the expression starting at the current position, stopping at the first char that cannot continue it.
+	 * @return the compiled expression
+	 * @throws IllegalArgumentException if the text is not an expression
+	 */
+	public Expression parse() {
+		Expression left = and();
+		while (accept("||")) {
+			Expression a = left;
+			Expression b = and();
+			left = fold((p, i) -> a.evaluate(p, i) != 0 || b.evaluate(p, i) != 0 ? 1 : 0, a, b);
+		}
+		return left;
+	}
+
+	/**
+	 * Returns where the compiler stopped reading.
+	 * @return the index after the last char of the expression, and any spaces after it
+	 */
+	public int getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Compiles a chain of &amp;&amp;.
+	 * @return the compiled expression
+	 */
+	private Expression and() {
+		Expression left = comparison();
+		while (accept("&&")) {
+			Expression a = left;
+			Expression b = comparison();
+			left = fold((p, i) -> a.evaluate(p, i) != 0 && b.evaluate(p, i) != 0 ? 1 : 0, a, b);
+		}
+		return left;
+	}
+
+	/**
+	 * Compiles a sum, compared to another sum if a comparison follows it.
+	 * @return the compiled expression
+	 */
+	private Expression comparison() {
+		Expression a = sum();
+		Expression b;
+		if (accept("<=")) {
+			b = sum();
+			return fold((p, i) -> a.evaluate(p, i) <= b.evaluate(p, i) ? 1 : 0, a, b);
+		} else if (accept(">=")) {
+			b = sum();
+			return fold((p, i) -> a.evaluate(p, i) >= b.evaluate(p, i) ? 1 : 0, a, b);
+		} else if (accept("==")) {
+			b = sum();
+			return fold((p, i) -> a.evaluate(p, i) == b.evaluate(p, i) ? 1 : 0, a, b);
+		} else if (accept("!=")) {
+			b = sum();
+			return fold((p, i) -> a.evaluate(p, i) != b.evaluate(p, i) ? 1 : 0, a, b);
+		} else if (accept("<")) {
+			b = sum();
+			return fold((p, i) -> a.evaluate(p, i) < b.evaluate(p, i) ? 1 : 0, a, b);
+		} else if (accept(">")) {
+			b = sum();
+			return fold((p, i) -> a.evaluate(p, i) > b.evaluate(p, i) ? 1 : 0, a, b);
+		}
+		return a;
+	}
+
+	/**
+	 * Compiles a chain of + and -.
+	 * @return the compiled expression
+	 */
+	private Expression sum() {
+		Expression left = product();
+		while (true) {
+			Expression a = left;
+			if (accept("+")) {
+				Expression b = product();
+				left = fold((p, i) -> a.evaluate(p, i) + b.evaluate(p, i), a, b);
+			} else if (accept("-")) {
+				Expression b = product();
+				left = fold((p, i) -> a.evaluate(p, i) - b.evaluate(p, i), a, b);
+			} else {
+				return left;
+			}
+		}
+	}
+
+	/**
+	 * Compiles a chain of * and /.
+	 * @return the compiled expression
+	 */
+	private Expression product() {
+		Expression left = unary();
+		while (true) {
+			Expression a = left;
+			if (accept("*")) {
+				Expression b = unary();
+				left = fold((p, i) -> a.evaluate(p, i) * b.evaluate(p, i), a, b);
+			} else if (accept("/")) {
+				Expression b = unary();
+				left = fold((p, i) -> a.evaluate(p, i) / b.evaluate(p, i), a, b);
+			} else {
+				return left;
+			}
+		}
+	}
+
+	/**
+	 * Compiles a value that may be negated with - or !.
+	 * @return the compiled expression
+	 */
+	private Expression unary() {
+		if (accept("-")) {
+			Expression a = unary();
+			return fold((p, i) -> -a.evaluate(p, i), a, a);
+		} else if (accept("!") ) {
+			Expression a = unary();
+			return fold((p, i) -> a.evaluate(p, i) == 0 ? 1 : 0, a, a);
+		}
+		Expression a = atom();
+		if (accept("^")) { // Binds tighter than a sign on its left, and groups to the right
+			Expression b = unary();
+			return fold((p, i) -> Math.pow(a.evaluate(p, i), b.evaluate(p, i)), a, b);
+		}
+		return a;
+	}
+
+	/**
+	 * Compiles a number, a parameter, or an expression in parentheses.
+	 * @return the compiled expression
+	 */
+	private Expression atom() {
+		skipSpaces();
+		if (accept("(")) {
+			Expression a = parse();
+			if (!accept(")")) {
+				throw error("Expected )");
+			}
+			return a;
+		}
+		int start = this.position;
+		if (start < this.text.length() && (Character.isDigit(this.text.charAt(start)) || this.text.charAt(start) == '.')) {
+			while (this.position < this.text.length() && (Character.isDigit(this.text.charAt(this.position))
+					|| this.text.charAt(this.position) == '.' || this.text.charAt(this.position) == 'e' || this.text.charAt(this.position) == 'E')) {
+				char c = this.text.charAt(this.position++);
+				if ((c == 'e' || c == 'E') && this.position < this.text.length()
+						&& (this.text.charAt(this.position) == '+' || this.text.charAt(this.position) == '-')) { // The sign of the exponent
+					this.position++;
+				}
+			}
+			try {
+				double value = Double.parseDouble(this.text.substring(start, this.position));
+				skipSpaces();
+				return new Constant(value);
+			} catch (NumberFormatException e) {
+				throw error("Not a number: " + this.text.substring(start, this.position));
+			}
+		}
+		while (this.position < this.text.length() && Character.isLetterOrDigit(this.text.charAt(this.position))) {
+			this.position++;
+		}
+		String name = this.text.substring(start, this.position);
+		int index = this.names.indexOf(name);
+		if (name.isEmpty() || index < 0) {
+			throw error(name.isEmpty() ? "Expected a number or a parameter" : "Unknown parameter " + name);
+		}
+		skipSpaces();
+		return (p, i) -> p[i + index];
+	}
+
+	/**
+	 * Replaces an expression with its value if the expressions it is made of are constants.
+	 * @param expression -- the expression
+	 * @param a -- the first expression it is made of
+	 * @param b -- the second expression it is made of
+	 * @return the expression, or a constant holding its value
+	 */
+	private static Expression fold(Expression expression, Expression a, Expression b) {
+		if (a instanceof Constant && b instanceof Constant) {
+			return new Constant(expression.evaluate(null, 0));
+		}
+		return expression;
+	}
+
+	/**
+	 * Reads a token if it is next in the text, skipping the spaces around it.
+	 * @param token -- the token
+	 * @return true if the token was read, else false
+	 */
+	private boolean accept(String token) {
+		skipSpaces();
+		if (this.text.startsWith(token, this.position)) {
+			this.position += token.length();
+			skipSpaces();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the position past any spaces.
+	 */
+	private void skipSpaces() {
+		while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+			this.position++;
+		}
+	}
+
+	/**
+	 * Builds the exception thrown for text that is not an expression.
+	 * @param message -- what is wrong
+	 * @return the exception, naming where the problem is
+	 */
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + this.position + " in " + this.text);
+	}
+
+	/**
+	 * This class is an expression that does not use any parameter.
+	 */
+	private static class Constant implements Expression {
+
+		private final double value;
+
+		/**
+		 * Initializes the fields required.
+		 * @param value -- the value of the expression
+		 */
+		Constant(double value) {
+			this.value = value;
+		}
+
+		@Override
+		public double evaluate(double[] params, int base) {
+			return this.value;
+		}
+
+	}
+
+}
@@ -0,0 +1,132 @@
+package controller;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import model.SymbolSequence;
+/**
+ * This class remembers the iterations of recently computed L-systems, so changing the number of
+ * iterations only computes the iterations that were never computed before.
+ * Iterations are keyed by the axiom, the mapping and the iteration number, and the least recently
+ * used ones are dropped once the cache holds more than its capacity in bytes.
+ * @author Benhur J. Tadiparti
+ */
+public class GenerationCache {
+
+	/** The default number of bytes of symbols the cache holds. */
+	public static final long DEFAULT_CAPACITY = 64L << 20;
+
+	private LinkedHashMap<String, SymbolSequence> generations;
+	private long capacity;
+	private long bytes;
+
+	/**
+	 * Initializes an empty cache.
+	 * @param capacity -- the most bytes of symbols the cache holds
+	 */
+	public GenerationCache(long capacity) {
+		this.generations = new LinkedHashMap<>(16, 0.75f, true); // Iterates from the least recently used
+		this.capacity = capacity;
+		this.bytes = 0;
+	}
+
+	/**
+	 * Returns the key that identifies an L-system in the cache.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @return the key of the L-system
+	 */
+	public static String key(ProductionTable table, String ls) {
+		return ls.length() + ":" + ls + table.signature();
+	}
+
+	/**
+	 * Returns an iteration of an L-system if it is cached.
+	 * @param key -- the key of the L-system
+	 * @param generation -- the iteration number
+	 * @return the string after said iterations, or null if it is not cached
+	 */
+	public synchronized SymbolSequence get(String key, int generation) {
+		return this.generations.get(generation + "@" + key);
+	}
+
+	/**
+	 * Returns the deepest cached iteration of an L-system that is not past a given iteration.
+	 * @param key -- the key of the L-system
+	 * @param generation -- the deepest iteration wanted
+	 * @return the deepest cached iteration number, or 0 if none are cached
+	 */
+	public synchronized int deepest(String key, int generation) {
+		for (int i = generation; i > 0; i--) {
+			if (this.generations.containsKey(i + "@" + key)) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores an iteration of an L-system, dropping the least recently used iterations if the cache is full.
+	 * @param key -- the key of the L-system
+	 * @param generation -- the iteration number
+	 * @param symbols -- the string after said iterations
+	 * @return true if the iteration was stored, false if it is larger than the whole cache
+	 */
+	public synchronized boolean put(String key, int generation, SymbolSequence symbols) {
+		long size = sizeOf(symbols);
+		if (size > this.capacity) {
+			return false;
+		}
+		SymbolSequence old = this.generations.put(generation + "@" + key, symbols);
+		this.bytes += size - (old == null ? 0 : sizeOf(old));
+		trim();
+		return true;
+	}
+
+	/**
+	 * Sets the most bytes of symbols the cache holds, dropping iterations if it now holds too many.
+	 * @param capacity -- the capacity of the cache in bytes
+	 */
+	public synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		trim();
+	}
+
+	/**
+	 * Returns how many bytes of symbols the cache holds.
+	 * @return the size of the cache in bytes
+	 */
+	public synchronized long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Removes every iteration from the cache.
+	 */
+	public synchronized void clear() {
+		this.generations.clear();
+		this.bytes = 0;
+	}
+
+	/**
+	 * Drops the least recently used iterations until the cache is within its capacity.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<String, SymbolSequence>> eldest = this.generations.entrySet().iterator();
+		while (this.bytes > this.capacity && eldest.hasNext()) {
+			this.bytes -= sizeOf(eldest.next().getValue());
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Returns how many bytes an iteration takes up.
+	 * @param symbols -- the string of the iteration
+	 * @return the number of bytes the string's array takes up
+	 */
+	private static long sizeOf(SymbolSequence symbols) {
+		return 2L * symbols.capacity();
+	}
+
+}
@@ -0,0 +1,18 @@
+package controller;
+
+import model.SymbolSequence;
+/**
+ * This interface receives every iteration the rewriter computes.
+ * @author Benhur J. Tadiparti
+ */
+public interface GenerationListener {
+
+	/**
+	 * Receives one iteration of the L-system string.
+	 * @param generation -- the number of the iteration, counting the axiom as 0
+	 * @param symbols -- the string after said iterations
+	 * @return true if the listener keeps the string, so the rewriter must never write over it
+	 */
+	boolean generated(int generation, SymbolSequence symbols);
+
+}
@@ -0,0 +1,225 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import graphics.TurtleGraphics;
+/**
+ * This class predicts how an L-system grows without expanding it.
+ * Every symbol that can appear in the string gets a row of the growth matrix: how many of each symbol
+ * it turns into in one iteration. Multiplying the symbol counts of the axiom by the matrix once per
+ * iteration gives the symbol counts of every generation, and so its length and how many line strokes
+ * the turtle draws for it, in time that depends on the size of the alphabet and not of the string.
+ * The predictions are exact when no replacement depends on chance or context; otherwise every symbol
+ * is counted as its largest choice, so they are the most the L-system can reach.
+ * @author Benhur J. Tadiparti
+ */
+public class GrowthAnalyzer {
+
+	private char[] alphabet;
+	private int[][] targets;
+	private long[][] counts;
+	private boolean[] draws;
+	private long[] axiom;
+	private boolean exact;
+
+	/**
+	 * Builds the growth matrix of every symbol that can be reached from the axiom.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the axiom
+	 */
+	public GrowthAnalyzer(ProductionTable table, String ls) {
+		this.exact = table.isSimple();
+		HashMap<Character, Integer> index = new HashMap<>();
+		List<Character> symbols = new ArrayList<>();
+		for (int i = 0; i < ls.length(); i++) {
+			symbol(ls.charAt(i), index, symbols);
+		}
+		List<HashMap<Integer, Long>> rows = new ArrayList<>();
+		for (int a = 0; a < symbols.size(); a++) { // Symbols found while building a row get rows of their own
+			char c = symbols.get(a);
+			HashMap<Integer, Long> row = new HashMap<>();
+			int[] offsets = table.getOffsets();
+			if (c + 1 < offsets.length) { // Symbols with a list of choices have a slice holding only themselves
+				slice(table, offsets[c], offsets[c + 1], index, symbols, row);
+			} else { // Past the table, so copied unchanged
+				row.put(a, 1L);
+			}
+			for (int k = table.firstChoice(c); k < table.endChoice(c); k++) { // The largest count of every symbol over the choices
+				HashMap<Integer, Long> choice = new HashMap<>();
+				slice(table, table.start(k), table.start(k) + table.size(k), index, symbols, choice);
+				for (HashMap.Entry<Integer, Long> count : choice.entrySet()) {
+					row.merge(count.getKey(), count.getValue(), Math::max);
+				}
+			}
+			rows.add(row);
+		}
+		int size = symbols.size();
+		this.alphabet = new char[size];
+		this.targets = new int[size][];
+		this.counts = new long[size][];
+		this.draws = new boolean[size];
+		for (int a = 0; a < size; a++) {
+			this.alphabet[a] = symbols.get(a);
+			this.draws[a] = table.command(this.alphabet[a]) == TurtleGraphics.DRAW;
+			HashMap<Integer, Long> row = rows.get(a);
+			this.targets[a] = new int[row.size()];
+			this.counts[a] = new long[row.size()];
+			int k = 0;
+			for (HashMap.Entry<Integer, Long> count : row.entrySet()) {
+				this.targets[a][k] = count.getKey();
+				this.counts[a][k++] = count.getValue();
+			}
+		}
+		this.axiom = new long[size];
+		for (int i = 0; i < ls.length(); i++) {
+			this.axiom[index.get(ls.charAt(i))]++;
+		}
+	}
+
+	/**
+	 * Checks if the predictions are exact.
+	 * @return true if no replacement depends on chance or context, else false
+	 */
+	public boolean isExact() {
+		return this.exact;
+	}
+
+	/**
+	 * Returns how many different symbols can appear in the string.
+	 * @return the size of the growth matrix
+	 */
+	public int getAlphabetSize() {
+		return this.alphabet.length;
+	}
+
+	/**
+	 * Predicts the length of every generation.
+	 * @param iterations -- the last generation predicted
+	 * @return the length of generations 0 to iterations, Long.MAX_VALUE where it does not fit in a long
+	 */
+	public long[] lengths(int iterations) {
+		return predict(iterations)[0];
+	}
+
+	/**
+	 * Predicts how many line strokes the turtle draws for every generation.
+	 * @param iterations -- the last generation predicted
+	 * @return the line strokes of generations 0 to iterations, Long.MAX_VALUE where it does not fit in a long
+	 */
+	public long[] segments(int iterations) {
+		return predict(iterations)[1];
+	}
+
+	/**
+	 * Decides what to do with an L-system before it is expanded.
+	 * A final string longer than the stream threshold is streamed if it can be; one that is over the budget,
+	 * or too long to store when it cannot be streamed, is clamped to the deepest generation that fits
+	 * or rejected, as the budget says.
+	 * @param iterations -- the iterations asked for
+	 * @param budget -- the most symbols and line strokes allowed
+	 * @param streamThreshold -- the longest final string that is stored instead of streamed
+	 * @return the decision and the predicted cost of the iterations that are drawn
+	 */
+	public Admission admit(int iterations, Budget budget, long streamThreshold) {
+		long[][] predicted = predict(iterations);
+		long most = this.exact ? budget.getSymbols() : Math.min(budget.getSymbols(), streamThreshold); // Only simple tables stream
+		int fits = -1;
+		for (int g = iterations; g >= 0 && fits < 0; g--) {
+			if (predicted[0][g] <= most && predicted[1][g] <= budget.getSegments()) {
+				fits = g;
+			}
+			if (!budget.isClamp()) {
+				break;
+			}
+		}
+		if (fits < 0) {
+			return new Admission(Admission.REJECT, iterations, predicted[0][iterations], predicted[1][iterations], this.exact);
+		}
+		int action = fits < iterations ? Admission.CLAMP : predicted[0][fits] > streamThreshold ? Admission.STREAM : Admission.ACCEPT;
+		return new Admission(action, fits, predicted[0][fits], predicted[1][fits], this.exact);
+	}
+
+	/**
+	 * Multiplies the symbol counts of the axiom by the growth matrix once per iteration.
+	 * @param iterations -- the last generation predicted
+	 * @return the length and the line strokes of generations 0 to iterations
+	 */
+	private long[][] predict(int iterations) {
+		long[] lengths = new long[iterations + 1];
+		long[] segments = new long[iterations + 1];
+		long[] v = this.axiom;
+		for (int g = 0; g <= iterations; g++) {
+			for (int a = 0; a < v.length; a++) {
+				lengths[g] = add(lengths[g], v[a]);
+				segments[g] = this.draws[a] ? add(segments[g], v[a]) : segments[g];
+			}
+			if (g < iterations) {
+				long[] next = new long[v.length];
+				for (int a = 0; a < v.length; a++) {
+					for (int k = 0; v[a] != 0 && k < this.targets[a].length; k++) {
+						next[this.targets[a][k]] = add(next[this.targets[a][k]], multiply(v[a], this.counts[a][k]));
+					}
+				}
+				v = next;
+			}
+		}
+		return new long[][] { lengths, segments };
+	}
+
+	/**
+	 * Counts the symbols of a slice of the table into a row of the growth matrix.
+	 * @param table -- the replacements of the L-system
+	 * @param from -- where the slice starts in the table's rules
+	 * @param to -- where the slice ends in the table's rules
+	 * @param index -- the position of every symbol found so far in the alphabet
+	 * @param symbols -- the symbols found so far, in order
+	 * @param row -- the counts of the row
+	 */
+	private static void slice(ProductionTable table, int from, int to, HashMap<Character, Integer> index,
+			List<Character> symbols, HashMap<Integer, Long> row) {
+		char[] rules = table.getRules();
+		for (int i = from; i < to; i++) {
+			row.merge(symbol(rules[i], index, symbols), 1L, Long::sum);
+		}
+	}
+
+	/**
+	 * Gives a symbol a position in the alphabet if it does not have one yet.
+	 * @param c -- the symbol
+	 * @param index -- the position of every symbol found so far
+	 * @param symbols -- the symbols found so far, in order
+	 * @return the position of the symbol
+	 */
+	private static int symbol(char c, HashMap<Character, Integer> index, List<Character> symbols) {
+		Integer a = index.get(c);
+		if (a == null) {
+			a = symbols.size();
+			index.put(c, a);
+			symbols.add(c);
+		}
+		return a;
+	}
+
+	/**
+	 * Adds two counts, stopping at Long.MAX_VALUE instead of overflowing.
+	 * @param a -- the first count
+	 * @param b -- the second count
+	 * @return the sum of the counts
+	 */
+	private static long add(long a, long b) {
+		return Long.MAX_VALUE - a < b ? Long.MAX_VALUE : a + b;
+	}
+
+	/**
+	 * Multiplies two counts, stopping at Long.MAX_VALUE instead of overflowing.
+	 * @param a -- the first count
+	 * @param b -- the second count
+	 * @return the product of the counts
+	 */
+	private static long multiply(long a, long b) {
+		return a != 0 && b > Long.MAX_VALUE / a ? Long.MAX_VALUE : a * b;
+	}
+
+}
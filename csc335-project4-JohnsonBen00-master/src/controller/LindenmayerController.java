@@ -1,6 +1,10 @@
 package controller;
 
+import java.util.concurrent.ForkJoinPool;
+
 import model.LindenmayerModel;
+import model.SymbolCursor;
+import model.SymbolSequence;
 /**
  * This class interacts with the user's guess and compute an L-system string.
  * @author Benhur J. Tadiparti
@@ -8,7 +12,14 @@ import model.LindenmayerModel;
  */
 public class LindenmayerController {
 	
+	/** Final strings longer than this are streamed instead of stored in the model. */
+	public static final long STREAM_THRESHOLD = 1 << 24;
+	
 	private LindenmayerModel model;
+	private Rewriter rewriter;
+	private GenerationCache cache;
+	private long streamThreshold;
+	private Budget budget;
 	
 	/**
 	 * Initializes the fields required.
@@ -16,30 +27,181 @@ public class LindenmayerController {
 	 */
 	public LindenmayerController(LindenmayerModel model) {
 		this.model = model;
+		this.rewriter = new Rewriter();
+		this.cache = new GenerationCache(GenerationCache.DEFAULT_CAPACITY);
+		this.streamThreshold = STREAM_THRESHOLD;
+		this.budget = Budget.defaults();
 	}
 	
 	/**
-	 * Computes the final L-system string recursively, and stores said string in the model.
+	 * Computes the final L-system string, and stores said string in the model.
 	 * @param ls -- the string being modified
 	 * @param iterator -- the iterations the function is currently on
 	 */
 	public void getFinalString(String ls, int iterator) {
-		String result = "";
-		
-		if (iterator == this.model.getIterations()) { // If reached desired # of modification to the String, store in model and exit
-			this.model.setResult(ls);
-			return;
-		} else { // If not, replace all chars that appear in the string with its mapping values
-			for (int i = 0; i < ls.length(); i++) {
-				if (ls.charAt(i) == '-' || ls.charAt(i) == '+' || ls.charAt(i) == '[' || ls.charAt(i) == ']' || this.model.getVal(ls.charAt(i)) == null) {
-					result += ls.charAt(i);
-				} else {
-					result += this.model.getVal(ls.charAt(i));
-				}
-			}
-			iterator++;
-			getFinalString(result, iterator);
+		store(getTable(), ls, remaining(iterator));
+	}
+	
+	/**
+	 * Returns a cursor over the final L-system string that computes the string as it is read.
+	 * @param ls -- the string being modified
+	 * @param iterator -- the iterations the function is currently on
+	 * @return a cursor over the final string
+	 */
+	public SymbolCursor getStream(String ls, int iterator) {
+		return new SymbolStream(getTable(), ls, remaining(iterator));
+	}
+	
+	/**
+	 * Returns the final L-system string, starting from the axiom the user entered.
+	 * @return a cursor over the final string
+	 */
+	public SymbolCursor expand() {
+		return expand(getTable(), this.model.getAxiom(), this.model.getIterations());
+	}
+	
+	/**
+	 * Returns the final L-system string computed from the given inputs, so it can be computed
+	 * on another thread while the user keeps editing the model.
+	 * Strings longer than the stream threshold are streamed, so they never exist in memory;
+	 * shorter ones, and those whose replacements depend on chance or context, are computed and stored in the model.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @return a cursor over the final string
+	 */
+	public SymbolCursor expand(ProductionTable table, String ls, int iterations) {
+		SymbolSequence symbols = expandStored(table, ls, iterations);
+		return symbols == null ? new SymbolStream(table, ls, iterations) : symbols.cursor();
+	}
+	
+	/**
+	 * Returns the final L-system string computed from the given inputs, if it is short enough to be stored,
+	 * so it can be read again without computing it again.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @return the final string, or null if it is longer than the stream threshold and must be streamed
+	 */
+	public SymbolSequence expandStored(ProductionTable table, String ls, int iterations) {
+		if (table.isSimple() && table.predictLength(ls, iterations) > this.streamThreshold) {
+			return null;
+		}
+		return store(table, ls, iterations);
+	}
+	
+	/**
+	 * Returns the replacements the user entered, compiled into a table.
+	 * @return the table of replacements
+	 */
+	public ProductionTable getTable() {
+		return new ProductionTable(this.model);
+	}
+	
+	/**
+	 * Returns the parametric rules the user entered, compiled with the axiom and the plain rules.
+	 * A parametric string is always stored, so its length is limited to the stream threshold and to the budget,
+	 * counting a line stroke for every symbol, and it is clamped or rejected as the budget says once it grows past them.
+	 * @return the compiled parametric L-system, or null if the user entered no parametric rule
+	 * @throws IllegalArgumentException if the axiom or a rule cannot be read
+	 */
+	public ParametricSystem getParametric() {
+		if (this.model.getParametricRules().isEmpty()) {
+			return null;
+		}
+		ParametricSystem system = new ParametricSystem(this.model);
+		system.setLimit(Math.min(Math.min(this.budget.getSymbols(), this.budget.getSegments()), this.streamThreshold), this.budget.isClamp());
+		return system;
+	}
+	
+	/**
+	 * Returns a description of the final L-system string that shares every repeated expansion,
+	 * so its length, line count and extent can be found without computing the string.
+	 * @return the shared description of the L-system the user entered
+	 */
+	public ExpansionDag getDag() {
+		return new ExpansionDag(getTable(), this.model.getAngle());
+	}
+	
+	/**
+	 * Predicts the cost of an L-system from its growth matrix, and decides against the budget whether it is
+	 * drawn as asked, streamed, clamped to fewer iterations or rejected. Nothing is expanded.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @return the decision and the predicted cost
+	 */
+	public Admission admit(ProductionTable table, String ls, int iterations) {
+		return new GrowthAnalyzer(table, ls).admit(iterations, this.budget, this.streamThreshold);
+	}
+	
+	/**
+	 * Sets how large an L-system may grow before admit() clamps or rejects it.
+	 * @param budget -- the most symbols and line strokes allowed
+	 */
+	public void setBudget(Budget budget) {
+		this.budget = budget;
+	}
+	
+	/**
+	 * Sets the length above which expand() streams the final string.
+	 * @param threshold -- the largest final string that is stored in the model
+	 */
+	public void setStreamThreshold(long threshold) {
+		this.streamThreshold = threshold;
+	}
+	
+	/**
+	 * Sets where, and from what length, iterations of the L-system string are computed in parallel.
+	 * @param pool -- the pool that computes the chunks of an iteration
+	 * @param threshold -- the shortest iteration that is split into chunks
+	 */
+	public void setParallelism(ForkJoinPool pool, int threshold) {
+		this.rewriter.setParallelism(pool, threshold);
+	}
+	
+	/**
+	 * Sets the most bytes of iterations the controller remembers between computations.
+	 * @param capacity -- the capacity of the cache in bytes, or 0 to remember nothing
+	 */
+	public void setCacheCapacity(long capacity) {
+		this.cache.setCapacity(capacity);
+	}
+	
+	/**
+	 * Computes the final L-system string with the given replacements, and stores said string in the model.
+	 * The computation starts from the deepest iteration that is still cached, and every new iteration is cached.
+	 * The rewriter is shared, so only one string is computed at a time.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @return the final string that was stored
+	 */
+	private synchronized SymbolSequence store(ProductionTable table, String ls, int iterations) {
+		String key = GenerationCache.key(table, ls);
+		int generation = this.cache.deepest(key, iterations);
+		SymbolSequence start = generation == 0 ? new SymbolSequence(ls.toCharArray(), ls.length()) : this.cache.get(key, generation);
+		if (start == null) { // Dropped by another thread since it was found
+			generation = 0;
+			start = new SymbolSequence(ls.toCharArray(), ls.length());
 		}
+		if (generation == iterations) {
+			this.model.setResult(start);
+			return start;
+		}
+		this.rewriter.rewrite(table, start, generation, iterations - generation, (i, symbols) -> this.cache.put(key, i, symbols));
+		int length = this.rewriter.getLength();
+		this.model.setResult(this.rewriter.detach(), length); // The model keeps the buffer, so the String is never copied
+		return this.model.getResult();
+	}
+	
+	/**
+	 * Returns how many modifications are left to make to the String.
+	 * @param iterator -- the iterations the function is currently on
+	 * @return the number of iterations left
+	 */
+	private int remaining(int iterator) {
+		return Math.max(0, this.model.getIterations() - iterator);
 	}
     
 }
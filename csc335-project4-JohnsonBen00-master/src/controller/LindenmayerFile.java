@@ -0,0 +1,430 @@
+package controller;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import graphics.Geometry;
+import model.LindenmayerModel;
+import model.Production;
+import model.SymbolCursor;
+/**
+ * This class reads and writes the binary L-system file format, which stores the user's inputs
+ * together with either the final string or the line strokes of the L-system.
+ * A file starts with a header holding the magic number "LSYS", the version of the format, what kind of
+ * data the file holds, where said data starts and how long it is, followed by the inputs of the model.
+ * Version 2 adds the seed and the rules chosen by chance or context after the mapping, and version 3 adds
+ * the rules with parameters after those; older files can still be read.
+ * The data starts at a multiple of 8 bytes, so it can be read in place: opening a file maps it into
+ * memory, and the symbols or lines are read straight from the mapped pages without being copied.
+ * Every number is big-endian.
+ * @author Benhur J. Tadiparti
+ */
+public class LindenmayerFile {
+
+	/** The first four bytes of every file, "LSYS". */
+	public static final int MAGIC = 0x4C535953;
+
+	/** The version of the format written by this class. */
+	public static final int VERSION = 3;
+
+	/** What a file holds: symbols packed one byte each, symbols two bytes each, or line strokes. */
+	private static final int BYTE_SYMBOLS = 1, CHAR_SYMBOLS = 2, SEGMENTS = 3;
+
+	/** How many bytes are mapped at a time; a multiple of 4 so no float is split between two mappings. */
+	private static final int CHUNK_BITS = 30;
+
+	/** How many bytes the header has before the inputs of the model: the first 16 and the length and count. */
+	private static final int FIXED = 32;
+
+	private int kind;
+	private long length;
+	private long count;
+	private int x;
+	private int y;
+	private int iterations;
+	private int angle;
+	private String axiom;
+	private LinkedHashMap<Character, String> mapping;
+	private List<Production> productions;
+	private long seed;
+	private List<String> parametric;
+	private ByteBuffer[] chunks;
+
+	/**
+	 * Writes the inputs of a model and the final string of its L-system into a file.
+	 * The symbols are packed one byte each if every symbol of the L-system fits in a byte.
+	 * The parameters of a parametric L-system are not stored, so it can only be saved as line strokes.
+	 * @param file -- the file being written
+	 * @param model -- the inputs of the L-system
+	 * @param symbols -- the final string of the L-system
+	 * @param length -- the number of symbols in the final string
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if the L-system is parametric
+	 */
+	public static void writeSymbols(File file, LindenmayerModel model, SymbolCursor symbols, long length) throws IOException {
+		if (!model.getParametricRules().isEmpty()) {
+			throw new IllegalArgumentException("A parametric L-system can only be saved as line strokes");
+		}
+		boolean packed = isPacked(model);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			writeHeader(out, model, packed ? BYTE_SYMBOLS : CHAR_SYMBOLS, length, length);
+			long written = 0;
+			while (symbols.hasNext()) {
+				char c = symbols.next();
+				if (packed) {
+					out.writeByte(c);
+				} else {
+					out.writeChar(c);
+				}
+				written++;
+			}
+			if (written != length) {
+				throw new IllegalStateException("Expected " + length + " symbols, found " + written);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the final string of an L-system is smaller in a file than its line strokes, so it is
+	 * better saved with writeSymbols(), at the cost of drawing it again when it is opened.
+	 * @param model -- the inputs of the L-system
+	 * @param length -- the number of symbols in the final string
+	 * @param segments -- the line strokes of the L-system
+	 * @return true if the L-system can be saved as symbols and they take fewer bytes, else false
+	 */
+	public static boolean isSmallerAsSymbols(LindenmayerModel model, long length, Geometry segments) {
+		return model.getParametricRules().isEmpty() && length * (isPacked(model) ? 1 : 2) < (long) segments.getSize() * Float.BYTES;
+	}
+
+	/**
+	 * Writes the inputs of a model and the line strokes of its L-system into a file.
+	 * @param file -- the file being written
+	 * @param model -- the inputs of the L-system
+	 * @param segments -- the line strokes of the L-system
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeSegments(File file, LindenmayerModel model, Geometry segments) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			writeHeader(out, model, SEGMENTS, segments.getSize(), segments.getCount());
+			for (int i = 0; i < segments.getSize(); i++) {
+				out.writeFloat(segments.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Opens a file, mapping its data into memory.
+	 * @param file -- the file being read
+	 * @return the contents of the file
+	 * @throws IOException if the file cannot be read, is not an L-system file of a known version, or is broken
+	 */
+	public static LindenmayerFile open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer start = ByteBuffer.allocate(16);
+			while (start.hasRemaining() && channel.read(start) >= 0) {
+				continue;
+			}
+			start.flip();
+			if (start.remaining() < 16 || start.getInt() != MAGIC) {
+				throw new IOException(file + " is not an L-system file");
+			}
+			int version = start.getInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException(file + " has version " + version + ", expected at most " + VERSION);
+			}
+			int kind = start.getInt();
+			int offset = start.getInt();
+			if (offset < FIXED || offset % 8 != 0 || offset > channel.size()) {
+				throw new IOException(file + " has a broken header: the data cannot start at " + offset);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+			header.position(16);
+			try {
+				return new LindenmayerFile(channel, version, kind, offset, header);
+			} catch (BufferUnderflowException | IllegalArgumentException e) { // The inputs run past where the data starts
+				throw new IOException(file + " has a broken header", e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the header of a file and maps its data.
+	 * @param channel -- the open file
+	 * @param version -- the version of the format the file was written in
+	 * @param kind -- what the file holds
+	 * @param offset -- where the data starts
+	 * @param header -- the header, positioned after its first 16 bytes
+	 * @throws IOException if the file holds a kind of data that is not known, its sizes do not agree, or it cannot be mapped
+	 * @throws BufferUnderflowException if the inputs run past the end of the header
+	 * @throws IllegalArgumentException if an input cannot be read
+	 */
+	private LindenmayerFile(FileChannel channel, int version, int kind, long offset, ByteBuffer header) throws IOException {
+		if (kind != BYTE_SYMBOLS && kind != CHAR_SYMBOLS && kind != SEGMENTS) {
+			throw new IOException("Unknown kind of L-system file: " + kind);
+		}
+		this.kind = kind;
+		this.length = header.getLong();
+		this.count = header.getLong();
+		long most = (channel.size() - offset) / (kind == BYTE_SYMBOLS ? 1 : kind == CHAR_SYMBOLS ? 2 : 4);
+		if (this.length < 0 || this.length > most) {
+			throw new IOException("L-system file is cut short: " + this.length + " entries do not fit in " + (channel.size() - offset) + " bytes");
+		}
+		if (kind == SEGMENTS ? this.length % 2 != 0 || this.length > Integer.MAX_VALUE || this.count < 0 || this.count > this.length / 2
+				: this.count != this.length) { // Every line adds at least one point to a polyline
+			throw new IOException("L-system file has " + this.length + " entries, which do not hold " + this.count + (kind == SEGMENTS ? " lines" : " symbols"));
+		}
+		this.x = header.getInt();
+		this.y = header.getInt();
+		this.iterations = header.getInt();
+		this.angle = header.getInt();
+		this.axiom = readString(header);
+		this.mapping = new LinkedHashMap<>();
+		for (int rules = header.getInt(); rules > 0; rules--) {
+			char key = header.getChar();
+			this.mapping.put(key, readString(header));
+		}
+		this.productions = new ArrayList<>();
+		this.seed = version >= 2 ? header.getLong() : 0;
+		for (int rules = version >= 2 ? header.getInt() : 0; rules > 0; rules--) {
+			char symbol = header.getChar();
+			int left = header.getInt();
+			int right = header.getInt();
+			double weight = header.getDouble();
+			this.productions.add(new Production(symbol, left, right, weight, readString(header)));
+		}
+		this.parametric = new ArrayList<>();
+		for (int rules = version >= 3 ? header.getInt() : 0; rules > 0; rules--) {
+			this.parametric.add(readString(header));
+		}
+		long bytes = this.length * (kind == BYTE_SYMBOLS ? 1 : kind == CHAR_SYMBOLS ? 2 : 4);
+		this.chunks = new ByteBuffer[(int) ((bytes + (1L << CHUNK_BITS) - 1) >>> CHUNK_BITS)];
+		for (int k = 0; k < this.chunks.length; k++) { // The mappings stay valid after the channel is closed
+			long from = (long) k << CHUNK_BITS;
+			this.chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, offset + from, Math.min(1L << CHUNK_BITS, bytes - from));
+		}
+	}
+
+	/**
+	 * Copies the inputs stored in the file into a model, as a single change.
+	 * Rules the model has that the file does not are removed.
+	 * @param model -- the class that stores the users' inputs
+	 */
+	public void load(LindenmayerModel model) {
+		model.beginUpdate();
+		model.setOrigin(this.x, this.y);
+		model.setIterations(this.iterations);
+		model.setAngle(this.angle);
+		model.setAxiom(this.axiom);
+		for (char key : new ArrayList<>(model.getKey())) { // The file's rules replace the model's
+			if (!this.mapping.containsKey(key)) {
+				model.removeMap(key);
+			}
+		}
+		for (Production rule : new ArrayList<>(model.getProductions())) {
+			model.removeProduction(rule);
+		}
+		for (String rule : new ArrayList<>(model.getParametricRules())) {
+			model.removeParametricRule(rule);
+		}
+		for (Map.Entry<Character, String> rule : this.mapping.entrySet()) {
+			model.setMap(rule.getKey(), rule.getValue());
+		}
+		model.setSeed(this.seed);
+		for (Production rule : this.productions) {
+			model.addProduction(rule);
+		}
+		for (String rule : this.parametric) {
+			model.addParametricRule(rule);
+		}
+		model.commit();
+	}
+
+	/**
+	 * Checks if the file holds the final string of the L-system.
+	 * @return true if the file holds symbols, false if it holds line strokes
+	 */
+	public boolean hasSymbols() {
+		return this.kind != SEGMENTS;
+	}
+
+	/**
+	 * Returns the number of symbols in the final string the file holds.
+	 * @return the number of symbols, or the number of line strokes if the file holds line strokes
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Reads the final string from the mapped file, one symbol at a time.
+	 * @return a cursor over the symbols the file holds
+	 * @throws IllegalStateException if the file holds line strokes
+	 */
+	public SymbolCursor getSymbols() {
+		if (!hasSymbols()) {
+			throw new IllegalStateException("The file holds line strokes, not symbols");
+		}
+		int width = this.kind == BYTE_SYMBOLS ? 1 : 2;
+		return new SymbolCursor() {
+			private long next = 0;
+			private int chunk = 0;
+			private ByteBuffer data = chunks.length > 0 ? chunks[0].duplicate() : null; // Each cursor has its own position
+
+			@Override
+			public boolean hasNext() {
+				return this.next < length;
+			}
+
+			@Override
+			public char next() {
+				if (!this.data.hasRemaining()) {
+					this.data = chunks[++this.chunk].duplicate();
+				}
+				this.next++;
+				return width == 1 ? (char) (this.data.get() & 0xFF) : this.data.getChar();
+			}
+		};
+	}
+
+	/**
+	 * Returns the line strokes of the mapped file, read in place.
+	 * @return the line strokes the file holds
+	 * @throws IllegalStateException if the file holds symbols
+	 */
+	public Geometry getSegments() {
+		if (hasSymbols()) {
+			throw new IllegalStateException("The file holds symbols, not line strokes");
+		}
+		int size = (int) this.length;
+		int count = (int) this.count;
+		ByteBuffer[] chunks = this.chunks;
+		return new Geometry() {
+			@Override
+			public int getCount() {
+				return count;
+			}
+
+			@Override
+			public int getSize() {
+				return size;
+			}
+
+			@Override
+			public float get(int i) {
+				long at = (long) i << 2;
+				return chunks[(int) (at >>> CHUNK_BITS)].getFloat((int) (at & ((1 << CHUNK_BITS) - 1)));
+			}
+		};
+	}
+
+	/**
+	 * Checks if every symbol the L-system can write fits in a byte.
+	 * @param model -- the inputs of the L-system
+	 * @return true if the symbols can be packed one byte each, else false
+	 */
+	private static boolean isPacked(LindenmayerModel model) {
+		boolean packed = true;
+		for (char c : model.getAxiom().toCharArray()) {
+			packed &= c < 256;
+		}
+		for (char key : model.getKey()) {
+			for (char c : model.getVal(key).toCharArray()) {
+				packed &= c < 256;
+			}
+		}
+		for (Production rule : model.getProductions()) {
+			for (char c : rule.getReplacement().toCharArray()) {
+				packed &= c < 256;
+			}
+		}
+		return packed;
+	}
+
+	/**
+	 * Writes the header of a file, padded so the data after it starts at a multiple of 8 bytes.
+	 * @param out -- where the file is written
+	 * @param model -- the inputs of the L-system
+	 * @param kind -- what the file holds
+	 * @param length -- the number of symbols or floats the file holds
+	 * @param count -- the number of symbols or line strokes the file holds
+	 * @throws IOException if the header cannot be written
+	 */
+	private static void writeHeader(DataOutputStream out, LindenmayerModel model, int kind, long length, long count) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeLong(length);
+		header.writeLong(count);
+		header.writeInt(model.getX());
+		header.writeInt(model.getY());
+		header.writeInt(model.getIterations());
+		header.writeInt(model.getAngle());
+		writeString(header, model.getAxiom());
+		header.writeInt(model.getKey().size());
+		for (char key : model.getKey()) {
+			header.writeChar(key);
+			writeString(header, model.getVal(key));
+		}
+		header.writeLong(model.getSeed());
+		header.writeInt(model.getProductions().size());
+		for (Production rule : model.getProductions()) {
+			header.writeChar(rule.getSymbol());
+			header.writeInt(rule.getLeft());
+			header.writeInt(rule.getRight());
+			header.writeDouble(rule.getWeight());
+			writeString(header, rule.getReplacement());
+		}
+		header.writeInt(model.getParametricRules().size());
+		for (String rule : model.getParametricRules()) {
+			writeString(header, rule);
+		}
+		int offset = (16 + bytes.size() + 7) & ~7;
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(kind);
+		out.writeInt(offset);
+		bytes.writeTo(out);
+		out.write(new byte[offset - 16 - bytes.size()]);
+	}
+
+	/**
+	 * Writes a string as its length followed by its chars.
+	 * @param out -- where the string is written
+	 * @param s -- the string being written
+	 * @throws IOException if the string cannot be written
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeInt(s.length());
+		out.writeChars(s);
+	}
+
+	/**
+	 * Reads a string written by writeString().
+	 * @param in -- the header being read
+	 * @return the string that was written
+	 * @throws BufferUnderflowException if the string runs past the end of the header
+	 */
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0 || length > in.remaining() / 2) {
+			throw new BufferUnderflowException();
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = in.getChar();
+		}
+		return new String(chars);
+	}
+
+}
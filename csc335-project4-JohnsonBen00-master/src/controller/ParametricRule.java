@@ -0,0 +1,171 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+/**
+ * This class is one compiled rule of a parametric L-system, written as "F(l) : l>1 -> F(l*0.7)[+F(l*0.5)]".
+ * The rule replaces a symbol that has as many parameters as the rule names, if its condition is true for them.
+ * The condition and every parameter of the replacement are compiled once, when the rule is read.
+ * @author Benhur J. Tadiparti
+ */
+public class ParametricRule {
+
+	private static final Expression TRUE = (params, base) -> 1;
+
+	private char symbol;
+	private int arity;
+	private Expression condition;
+	private char[] symbols;
+	private int[] arities;
+	private Expression[] args;
+
+	/**
+	 * Reads and compiles a rule.
+	 * @param text -- the rule, written as symbol[(names)] [: condition] -&gt; replacement
+	 * @throws IllegalArgumentException if the rule cannot be read
+	 */
+	public ParametricRule(String text) {
+		int arrow = text.indexOf("->");
+		if (arrow < 0) {
+			throw new IllegalArgumentException("A rule must have ->: " + text);
+		}
+		String head = text.substring(0, arrow).trim();
+		int colon = head.indexOf(':');
+		String predecessor = (colon < 0 ? head : head.substring(0, colon)).trim();
+		if (predecessor.isEmpty()) {
+			throw new IllegalArgumentException("A rule must have a symbol: " + text);
+		}
+		this.symbol = predecessor.charAt(0);
+		List<String> names = new ArrayList<>();
+		if (predecessor.length() > 1) {
+			if (predecessor.charAt(1) != '(' || !predecessor.endsWith(")")) {
+				throw new IllegalArgumentException("The parameters of a symbol must be in parentheses: " + predecessor);
+			}
+			for (String name : predecessor.substring(2, predecessor.length() - 1).split(",")) {
+				if (!name.trim().isEmpty()) {
+					names.add(name.trim());
+				}
+			}
+		}
+		this.arity = names.size();
+		this.condition = colon < 0 ? TRUE : ExpressionCompiler.compile(head.substring(colon + 1), names);
+		Modules modules = parseModules(text.substring(arrow + 2), names);
+		this.symbols = modules.symbols;
+		this.arities = modules.arities;
+		this.args = modules.args;
+	}
+
+	/**
+	 * Returns the symbol the rule replaces.
+	 * @return the symbol of the rule
+	 */
+	public char getSymbol() {
+		return this.symbol;
+	}
+
+	/**
+	 * Returns how many parameters a symbol must have to be replaced by the rule.
+	 * @return the number of parameters the rule names
+	 */
+	public int getArity() {
+		return this.arity;
+	}
+
+	/**
+	 * Checks if the rule replaces a symbol.
+	 * @param arity -- how many parameters the symbol has
+	 * @param params -- the parameters of every symbol in the string
+	 * @param base -- where the parameters of the symbol start in params
+	 * @return true if the symbol has as many parameters as the rule names and the condition is true, else false
+	 */
+	public boolean matches(int arity, double[] params, int base) {
+		return arity == this.arity && this.condition.evaluate(params, base) != 0;
+	}
+
+	/**
+	 * Returns the symbols the rule replaces its symbol with.
+	 * @return the symbols of the replacement
+	 */
+	char[] getSymbols() {
+		return this.symbols;
+	}
+
+	/**
+	 * Returns how many parameters every symbol of the replacement has.
+	 * @return the number of parameters of every symbol of the replacement
+	 */
+	int[] getArities() {
+		return this.arities;
+	}
+
+	/**
+	 * Returns the parameters of the replacement, for every symbol in order.
+	 * @return the compiled parameters of the replacement
+	 */
+	Expression[] getArgs() {
+		return this.args;
+	}
+
+	/**
+	 * Reads a string of symbols, each followed by its parameters in parentheses if it has any, as in "F(l*0.7)[+F(l)]".
+	 * Spaces between symbols are skipped.
+	 * @param text -- the symbols
+	 * @param names -- the names of the parameters the expressions can use
+	 * @return the symbols, how many parameters each has, and the compiled parameters
+	 * @throws IllegalArgumentException if a parameter cannot be read
+	 */
+	static Modules parseModules(String text, List<String> names) {
+		char[] symbols = new char[text.length()];
+		int[] arities = new int[text.length()];
+		List<Expression> args = new ArrayList<>();
+		int count = 0;
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i++);
+			if (Character.isWhitespace(c)) {
+				continue;
+			}
+			symbols[count] = c;
+			if (i < text.length() && text.charAt(i) == '(') {
+				ExpressionCompiler compiler;
+				do {
+					compiler = new ExpressionCompiler(text, i + 1, names);
+					args.add(compiler.parse());
+					arities[count]++;
+					i = compiler.getPosition();
+				} while (i < text.length() && text.charAt(i) == ',');
+				if (i >= text.length() || text.charAt(i) != ')') {
+					throw new IllegalArgumentException("Expected ) at " + i + " in " + text);
+				}
+				i++;
+			}
+			count++;
+		}
+		return new Modules(Arrays.copyOf(symbols, count), Arrays.copyOf(arities, count), args.toArray(new Expression[0]));
+	}
+
+	/**
+	 * This class is a string of symbols with compiled parameters.
+	 */
+	static class Modules {
+
+		final char[] symbols;
+		final int[] arities;
+		final Expression[] args;
+
+		/**
+		 * Initializes the fields required.
+		 * @param symbols -- the symbols
+		 * @param arities -- how many parameters every symbol has
+		 * @param args -- the parameters, for every symbol in order
+		 */
+		Modules(char[] symbols, int[] arities, Expression[] args) {
+			this.symbols = symbols;
+			this.arities = arities;
+			this.args = args;
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import metrics.Metrics;
+import model.LindenmayerModel;
+import model.ParametricSequence;
+/**
+ * This class computes a parametric L-system, where every symbol can carry numbers, as in "F(10)".
+ * The rules are compiled once and looked up by symbol in a dense table, and the string is kept as
+ * its symbols and a parallel stream of parameters, so an iteration allocates no objects per symbol.
+ * Rules are tried in the order they were entered, and the first that matches replaces the symbol;
+ * symbols no rule matches are copied with their parameters.
+ * Plain rules of the model take part as rules without parameters; rules chosen by chance or context do not.
+ * Conditions decide how a parametric L-system grows, so its length cannot be predicted; instead the expansion
+ * stops at a limit on the length of the string, at the last iteration that fits or with an exception.
+ * @author Benhur J. Tadiparti
+ */
+public class ParametricSystem {
+
+	private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	private ParametricRule[][] rules;
+	private ParametricRule.Modules axiom;
+	private long limit;
+	private boolean clamp;
+	private int iterations;
+
+	/**
+	 * Compiles the axiom and the rules the user entered.
+	 * @param model -- the class that stores the users' inputs
+	 * @throws IllegalArgumentException if the axiom or a rule cannot be read
+	 */
+	public ParametricSystem(LindenmayerModel model) {
+		List<ParametricRule> all = new ArrayList<>();
+		for (String rule : model.getParametricRules()) {
+			all.add(new ParametricRule(rule));
+		}
+		for (char key : model.getKey()) {
+			all.add(new ParametricRule(key + "->" + model.getVal(key)));
+		}
+		this.axiom = ParametricRule.parseModules(model.getAxiom(), Collections.emptyList());
+		int size = 0;
+		for (ParametricRule rule : all) {
+			size = Math.max(size, rule.getSymbol() + 1);
+		}
+		this.rules = new ParametricRule[size][];
+		for (ParametricRule rule : all) {
+			ParametricRule[] same = this.rules[rule.getSymbol()];
+			same = same == null ? new ParametricRule[1] : Arrays.copyOf(same, same.length + 1);
+			same[same.length - 1] = rule;
+			this.rules[rule.getSymbol()] = same;
+		}
+		this.limit = MAX_LENGTH;
+	}
+
+	/**
+	 * Sets the longest string the expansion may compute.
+	 * @param symbols -- the most symbols the final string may have
+	 * @param clamp -- true to stop at the last iteration that fits, false to throw an exception
+	 */
+	public void setLimit(long symbols, boolean clamp) {
+		this.limit = Math.min(symbols, MAX_LENGTH);
+		this.clamp = clamp;
+	}
+
+	/**
+	 * Returns how many iterations the last expansion computed.
+	 * @return the iterations asked for, or fewer if the expansion was clamped to the limit
+	 */
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	/**
+	 * Returns the axiom with its parameters.
+	 * @return the string the L-system starts from
+	 */
+	public ParametricSequence getAxiom() {
+		int[] offsets = new int[this.axiom.symbols.length + 1];
+		double[] params = new double[this.axiom.args.length];
+		for (int i = 0; i < this.axiom.symbols.length; i++) {
+			offsets[i + 1] = offsets[i] + this.axiom.arities[i];
+		}
+		for (int k = 0; k < params.length; k++) {
+			params[k] = this.axiom.args[k].evaluate(params, 0);
+		}
+		return new ParametricSequence(this.axiom.symbols.clone(), offsets, params, this.axiom.symbols.length);
+	}
+
+	/**
+	 * Computes the final string, starting from the axiom.
+	 * @param iterations -- how many times the string is modified
+	 * @return the final string with its parameters
+	 * @throws CancellationException if the thread is interrupted between iterations
+	 * @throws IllegalStateException if the string grows past the limit and is not clamped
+	 */
+	public ParametricSequence expand(int iterations) {
+		ParametricSequence ls = getAxiom();
+		this.iterations = 0;
+		for (int i = 0; i < iterations; i++) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("L-system rewrite was interrupted");
+			}
+			long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+			ParametricSequence next = rewrite(ls, this.limit);
+			if (next == null) {
+				if (!this.clamp) {
+					throw new IllegalStateException("L-system is too large to expand: over " + this.limit + " symbols");
+				}
+				break;
+			}
+			ls = next;
+			this.iterations = i + 1;
+			if (start != 0) {
+				Metrics.generation(i + 1, ls.length(), System.nanoTime() - start);
+			}
+		}
+		return ls;
+	}
+
+	/**
+	 * Makes one iteration of the string.
+	 * @param ls -- the string being modified
+	 * @return the modified string
+	 * @throws IllegalStateException if the string grows too large to fit in an array
+	 */
+	public ParametricSequence rewrite(ParametricSequence ls) {
+		return rewrite(ls, MAX_LENGTH);
+	}
+
+	/**
+	 * Makes one iteration of the string, giving up as soon as it grows past a limit.
+	 * @param ls -- the string being modified
+	 * @param limit -- the most symbols the modified string may have
+	 * @return the modified string, or null if it has more symbols than the limit
+	 * @throws IllegalStateException if the string grows too large to fit in an array
+	 */
+	private ParametricSequence rewrite(ParametricSequence ls, long limit) {
+		char[] src = ls.getSymbols();
+		int[] srcOffsets = ls.getOffsets();
+		double[] srcParams = ls.getParams();
+		int length = ls.length();
+		char[] symbols = new char[Math.max(16, length * 2)];
+		int[] offsets = new int[symbols.length + 1];
+		double[] params = new double[Math.max(16, srcOffsets[length] * 2)];
+		int count = 0;
+		int used = 0;
+		for (int i = 0; i < length; i++) {
+			char c = src[i];
+			int base = srcOffsets[i];
+			int arity = srcOffsets[i + 1] - base;
+			ParametricRule rule = match(c, arity, srcParams, base);
+			char[] replace = rule == null ? null : rule.getSymbols();
+			int grow = replace == null ? 1 : replace.length;
+			int values = replace == null ? arity : rule.getArgs().length;
+			if (count + grow > limit && limit < MAX_LENGTH) {
+				return null;
+			}
+			if (count + grow > symbols.length) {
+				symbols = Arrays.copyOf(symbols, capacity(symbols.length, (long) count + grow));
+				offsets = Arrays.copyOf(offsets, symbols.length + 1);
+			}
+			if (used + values > params.length) {
+				params = Arrays.copyOf(params, capacity(params.length, (long) used + values));
+			}
+			if (replace == null) { // Copied with its parameters
+				System.arraycopy(srcParams, base, params, used, arity);
+				symbols[count] = c;
+				used += arity;
+				offsets[++count] = used;
+			} else {
+				int[] arities = rule.getArities();
+				Expression[] args = rule.getArgs();
+				int a = 0;
+				for (int j = 0; j < replace.length; j++) {
+					symbols[count] = replace[j];
+					for (int k = 0; k < arities[j]; k++) {
+						params[used++] = args[a++].evaluate(srcParams, base);
+					}
+					offsets[++count] = used;
+				}
+			}
+		}
+		return new ParametricSequence(symbols, offsets, params, count);
+	}
+
+	/**
+	 * Returns the first rule that replaces a symbol.
+	 * @param c -- the symbol
+	 * @param arity -- how many parameters the symbol has
+	 * @param params -- the parameters of every symbol in the string
+	 * @param base -- where the parameters of the symbol start in params
+	 * @return the rule, or null if the symbol is copied unchanged
+	 */
+	private ParametricRule match(char c, int arity, double[] params, int base) {
+		ParametricRule[] same = c < this.rules.length ? this.rules[c] : null;
+		if (same != null) {
+			for (ParametricRule rule : same) {
+				if (rule.matches(arity, params, base)) {
+					return rule;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the size an array grows to so it holds a number of entries.
+	 * @param current -- the size of the array
+	 * @param needed -- the number of entries it must hold
+	 * @return the new size of the array
+	 * @throws IllegalStateException if the entries do not fit in an array
+	 */
+	private static int capacity(int current, long needed) {
+		if (needed > MAX_LENGTH) {
+			throw new IllegalStateException("L-system is too large to expand: " + needed + " symbols");
+		}
+		return (int) Math.min(MAX_LENGTH, Math.max(needed, (long) current * 2));
+	}
+
+}
@@ -0,0 +1,385 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import graphics.TurtleGraphics;
+import model.LindenmayerModel;
+import model.Production;
+/**
+ * This class compiles the L-system "mapping" into dense tables indexed by symbol, so neither
+ * the rewriter nor the turtle goes through the model's HashMap or compares a symbol to a list of cases.
+ * Every replacement is a slice of one char array, and every symbol below the table's size has a slice:
+ * a symbol that is copied unchanged has a slice holding only itself. Next to the slices is the
+ * command every symbol gives the turtle. Symbols past the table's size are copied unchanged and give no command.
+ * <p>
+ * A symbol with several rules, or with a rule that depends on its neighbours, has a list of choices instead.
+ * The choice made for a symbol only depends on the seed, the iteration, the symbol's index in the string
+ * and its neighbours, so the same L-system is computed however the string is split between threads.
+ * @author Benhur J. Tadiparti
+ */
+public class ProductionTable {
+
+	/** Steps the seed the way SplitMix64 does between two numbers. */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private char[][] table;
+	private char[] rules;
+	private int[] offsets;
+	private byte[] commands;
+	private boolean simple;
+	private int[] choices;
+	private int[] starts;
+	private int[] lefts;
+	private int[] rights;
+	private double[] weights;
+	private long seed;
+	private String signature;
+
+	/**
+	 * Compiles the tables from the mapping and the rules the user entered. Any symbol can be mapped,
+	 * except for the turtle commands that turn and save or restore the turtle.
+	 * @param model -- the class that stores the users' inputs
+	 */
+	public ProductionTable(LindenmayerModel model) {
+		List<Production> all = new ArrayList<>(); // Every rule, with the mapping as rules that always apply
+		for (char key : model.getKey()) {
+			all.add(new Production(key, Production.ANY, Production.ANY, 1, model.getVal(key)));
+		}
+		all.addAll(model.getProductions());
+		int size = ']' + 1; // The table reaches every turtle command and every symbol of the rules
+		for (Production rule : all) {
+			size = Math.max(size, rule.getSymbol() + 1);
+			for (char c : rule.getReplacement().toCharArray()) {
+				size = Math.max(size, c + 1);
+			}
+		}
+		this.seed = model.getSeed();
+		this.choices = new int[size + 1]; // The choices of symbol c run from choices[c] to choices[c + 1]
+		for (Production rule : all) {
+			if (!isConstant(rule.getSymbol())) {
+				this.choices[rule.getSymbol() + 1]++;
+			}
+		}
+		for (int c = 0; c < size; c++) {
+			this.choices[c + 1] += this.choices[c];
+		}
+		int count = this.choices[size];
+		Production[] sorted = new Production[count]; // The rules in order of their symbols
+		int[] next = Arrays.copyOf(this.choices, size);
+		for (Production rule : all) {
+			if (!isConstant(rule.getSymbol())) {
+				sorted[next[rule.getSymbol()]++] = rule;
+			}
+		}
+
+		this.table = new char[size][];
+		this.simple = true;
+		for (int c = 0; c < size; c++) {
+			int first = this.choices[c];
+			int rules = this.choices[c + 1] - first;
+			if (rules > 1 || (rules == 1 && (sorted[first].getLeft() != Production.ANY || sorted[first].getRight() != Production.ANY))) {
+				this.simple = false; // The replacement depends on chance or context
+			} else if (rules == 1) {
+				this.table[c] = sorted[first].getReplacement().toCharArray();
+			}
+		}
+
+		int total = size; // One slice per symbol, then one per choice
+		for (char[] replace : this.table) {
+			total += replace == null ? 0 : replace.length - 1;
+		}
+		for (Production rule : sorted) {
+			total += rule.getReplacement().length();
+		}
+		this.rules = new char[total];
+		this.offsets = new int[size + 1]; // The slice of symbol c runs from offsets[c] to offsets[c + 1]
+		for (int c = 0; c < size; c++) {
+			int at = this.offsets[c];
+			if (this.table[c] == null) {
+				this.rules[at] = (char) c;
+				this.offsets[c + 1] = at + 1;
+			} else {
+				System.arraycopy(this.table[c], 0, this.rules, at, this.table[c].length);
+				this.offsets[c + 1] = at + this.table[c].length;
+			}
+		}
+		this.starts = new int[count + 1]; // The slice of choice k runs from starts[k] to starts[k + 1]
+		this.lefts = new int[count];
+		this.rights = new int[count];
+		this.weights = new double[count];
+		this.starts[0] = this.offsets[size];
+		for (int k = 0; k < count; k++) {
+			String replacement = sorted[k].getReplacement();
+			replacement.getChars(0, replacement.length(), this.rules, this.starts[k]);
+			this.starts[k + 1] = this.starts[k] + replacement.length();
+			this.lefts[k] = sorted[k].getLeft();
+			this.rights[k] = sorted[k].getRight();
+			this.weights[k] = sorted[k].getWeight();
+		}
+		this.commands = TurtleGraphics.commands(size);
+
+		StringBuilder signature = new StringBuilder(); // Every replacement in order of its symbol
+		for (int c = 0; c < size; c++) {
+			if (this.table[c] != null) {
+				signature.append(';').append((char) c).append(this.table[c].length).append(':').append(this.table[c]);
+			}
+		}
+		if (!this.simple) { // Only then do the choices and the seed change the result
+			for (Production rule : sorted) {
+				signature.append(';').append(rule.getReplacement().length()).append(':').append(rule);
+			}
+			signature.append('#').append(this.seed);
+		}
+		this.signature = signature.toString();
+	}
+
+	/**
+	 * Checks if every symbol has at most one replacement, which applies wherever the symbol is.
+	 * Only then can the final string be streamed or described without computing it.
+	 * @return true if no replacement depends on chance or context, else false
+	 */
+	public boolean isSimple() {
+		return this.simple;
+	}
+
+	/**
+	 * Returns the chars that every slice is stored in. Must not be modified.
+	 * @return the replacements of every symbol below the table's size, in order of their symbols
+	 */
+	public char[] getRules() {
+		return this.rules;
+	}
+
+	/**
+	 * Returns where the slice of every symbol starts in getRules(), followed by where the last slice ends.
+	 * Must not be modified. Symbols with a list of choices have a slice holding only themselves.
+	 * @return the start of every slice, with one more entry than the table's size
+	 */
+	public int[] getOffsets() {
+		return this.offsets;
+	}
+
+	/**
+	 * Returns the command every symbol below the table's size gives the turtle. Must not be modified.
+	 * @return the commands of the symbols, as used by TurtleGraphics
+	 */
+	public byte[] getCommands() {
+		return this.commands;
+	}
+
+	/**
+	 * Returns the command a symbol gives the turtle.
+	 * @param c -- the symbol
+	 * @return the command of the symbol, as used by TurtleGraphics
+	 */
+	public byte command(char c) {
+		return c < this.commands.length ? this.commands[c] : TurtleGraphics.NONE;
+	}
+
+	/**
+	 * Chooses the replacement of a symbol from its list of choices. Rules whose context matches the
+	 * symbol's neighbours are chosen over rules with less context, and among the rules that match
+	 * equally well one is picked at random, with a chance that grows with its weight.
+	 * @param left -- the symbol right before, or Production.ANY at the start of the string
+	 * @param c -- the symbol being replaced
+	 * @param right -- the symbol right after, or Production.ANY at the end of the string
+	 * @param generation -- the iteration the symbol is in
+	 * @param index -- the index of the symbol in its iteration
+	 * @return the choice, or -1 if the symbol is copied unchanged
+	 */
+	public int choose(int left, char c, int right, int generation, int index) {
+		if (c >= this.table.length) {
+			return -1;
+		}
+		int best = -1;
+		double total = 0;
+		for (int k = this.choices[c]; k < this.choices[c + 1]; k++) {
+			int context = context(k, left, right);
+			if (context > best) {
+				best = context;
+				total = 0;
+			}
+			if (context == best) {
+				total += this.weights[k];
+			}
+		}
+		if (best < 0) {
+			return -1;
+		}
+		double pick = random(this.seed, generation, index) * total;
+		int chosen = -1;
+		for (int k = this.choices[c]; k < this.choices[c + 1] && pick >= 0; k++) {
+			if (context(k, left, right) == best) {
+				pick -= this.weights[k];
+				chosen = k;
+			}
+		}
+		return chosen;
+	}
+
+	/**
+	 * Returns the first choice of a symbol's list of choices.
+	 * @param c -- the symbol
+	 * @return the first choice, equal to endChoice(c) if the symbol has no list of choices
+	 */
+	public int firstChoice(char c) {
+		return c < this.table.length ? this.choices[c] : 0;
+	}
+
+	/**
+	 * Returns the choice after the last of a symbol's list of choices.
+	 * @param c -- the symbol
+	 * @return the end of the symbol's choices
+	 */
+	public int endChoice(char c) {
+		return c < this.table.length ? this.choices[c + 1] : 0;
+	}
+
+	/**
+	 * Returns where the replacement of a choice starts in getRules().
+	 * @param choice -- the choice returned by choose()
+	 * @return the start of the choice's slice
+	 */
+	public int start(int choice) {
+		return this.starts[choice];
+	}
+
+	/**
+	 * Returns how many symbols the replacement of a choice has.
+	 * @param choice -- the choice returned by choose()
+	 * @return the length of the choice's slice
+	 */
+	public int size(int choice) {
+		return this.starts[choice + 1] - this.starts[choice];
+	}
+
+	/**
+	 * Returns the replacement of a symbol.
+	 * @param c -- the symbol being replaced
+	 * @return the replacement of the symbol, or null if the symbol is copied unchanged or has a list of choices
+	 */
+	public char[] get(char c) {
+		return c < this.table.length ? this.table[c] : null;
+	}
+
+	/**
+	 * Checks if every replacement closes each '[' it opens with a ']'.
+	 * @return true if the brackets of every replacement are balanced, else false
+	 */
+	public boolean isBalanced() {
+		for (int k = 0; k + 1 < this.starts.length; k++) {
+			int depth = 0;
+			for (int i = this.starts[k]; i < this.starts[k + 1] && depth >= 0; i++) {
+				depth += this.rules[i] == '[' ? 1 : this.rules[i] == ']' ? -1 : 0;
+			}
+			if (depth != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a string that is equal for two tables exactly when they have the same replacements.
+	 * @return the replacements of the table written out in order of their symbols
+	 */
+	public String signature() {
+		return this.signature;
+	}
+
+	/**
+	 * Returns how many symbols a symbol turns into after one iteration.
+	 * @param c -- the symbol being replaced
+	 * @return the length of the replacement of the symbol, or 1 if it has a list of choices
+	 */
+	public int length(char c) {
+		return c < this.table.length ? this.offsets[c + 1] - this.offsets[c] : 1;
+	}
+
+	/**
+	 * Computes how many symbols a string has after being modified, without modifying it.
+	 * If a replacement depends on chance or context, its longest choice is counted.
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @return the length of the final string, or the most it can be if the table is not simple,
+	 * or Long.MAX_VALUE if it does not fit in a long
+	 */
+	public long predictLength(String ls, int iterations) {
+		long[] lengths = new long[this.table.length]; // lengths[c] is the length of c after i iterations
+		Arrays.fill(lengths, 1);
+		for (int i = 0; i < iterations; i++) {
+			long[] next = new long[this.table.length];
+			for (int c = 0; c < this.table.length; c++) {
+				next[c] = sum(this.rules, this.offsets[c], this.offsets[c + 1], lengths);
+				for (int k = this.choices[c]; !this.simple && k < this.choices[c + 1]; k++) {
+					next[c] = Math.max(next[c], sum(this.rules, this.starts[k], this.starts[k + 1], lengths));
+				}
+			}
+			lengths = next;
+		}
+		char[] symbols = ls.toCharArray();
+		return sum(symbols, 0, symbols.length, lengths);
+	}
+
+	/**
+	 * Adds up the lengths of every symbol in part of an array.
+	 * @param ls -- the symbols being counted
+	 * @param from -- the index of the first symbol counted
+	 * @param to -- the index after the last symbol counted
+	 * @param lengths -- the length of each mapped symbol
+	 * @return the total length, or Long.MAX_VALUE if it does not fit in a long
+	 */
+	private static long sum(char[] ls, int from, int to, long[] lengths) {
+		long total = 0;
+		for (int i = from; i < to; i++) {
+			char c = ls[i];
+			long length = c < lengths.length ? lengths[c] : 1;
+			total = Long.MAX_VALUE - total < length ? Long.MAX_VALUE : total + length;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns how well a choice's context matches the neighbours of its symbol.
+	 * @param k -- the choice
+	 * @param left -- the symbol right before
+	 * @param right -- the symbol right after
+	 * @return -1 if the context does not match, else the number of neighbours the context names
+	 */
+	private int context(int k, int left, int right) {
+		if ((this.lefts[k] != Production.ANY && this.lefts[k] != left) || (this.rights[k] != Production.ANY && this.rights[k] != right)) {
+			return -1;
+		}
+		return (this.lefts[k] == Production.ANY ? 0 : 1) + (this.rights[k] == Production.ANY ? 0 : 1);
+	}
+
+	/**
+	 * Returns a random number that only depends on its inputs. It is the number a SplitMix64
+	 * generator started at the seed gives after as many steps as the generation and index point at,
+	 * so any thread can compute the number of any symbol without the ones before it.
+	 * @param seed -- the seed of the L-system
+	 * @param generation -- the iteration the symbol is in
+	 * @param index -- the index of the symbol in its iteration
+	 * @return a number from 0 up to but not including 1
+	 */
+	static double random(long seed, int generation, int index) {
+		long z = seed + GOLDEN_GAMMA * ((((long) generation << 32) | (index & 0xFFFFFFFFL)) + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Checks if a symbol is one of the turtle commands that are never replaced.
+	 * @param c -- the symbol being checked
+	 * @return true if the symbol turns the turtle, or saves or restores it, else false
+	 */
+	public static boolean isConstant(char c) {
+		byte command = TurtleGraphics.command(c);
+		return command != TurtleGraphics.NONE && command != TurtleGraphics.DRAW;
+	}
+
+}
@@ -0,0 +1,328 @@
+package controller;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import metrics.Metrics;
+import model.Production;
+import model.SymbolSequence;
+/**
+ * This class rewrites an L-system string one iteration at a time.
+ * Each iteration is written into a char buffer whose size is counted before
+ * the iteration starts, so the work done is linear in the length of the result.
+ * Iterations at least as long as the parallel threshold are split into chunks that
+ * are replaced at the same time on a ForkJoinPool.
+ * Replacements that depend on chance or context are chosen from the symbol's neighbours, its index and
+ * the iteration number, so chunks choose exactly what a single pass would.
+ * @author Benhur J. Tadiparti
+ */
+public class Rewriter {
+
+	/** The largest array the JVM is guaranteed to allocate. */
+	private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+	
+	/** Iterations shorter than this are replaced on the calling thread. */
+	public static final int PARALLEL_THRESHOLD = 1 << 20;
+	
+	/** The fewest symbols a chunk is given, so tasks are not smaller than their overhead. */
+	private static final int MIN_CHUNK = 1 << 16;
+
+	private char[] front;
+	private char[] back;
+	private int length;
+	private boolean kept;
+	private ForkJoinPool pool;
+	private int threshold;
+
+	/**
+	 * Initializes the fields required.
+	 */
+	public Rewriter() {
+		this.front = new char[0];
+		this.back = new char[0];
+		this.length = 0;
+		this.kept = false;
+		this.pool = ForkJoinPool.commonPool();
+		this.threshold = PARALLEL_THRESHOLD;
+	}
+
+	/**
+	 * Sets where, and from what length, iterations are replaced in parallel.
+	 * @param pool -- the pool that replaces the chunks of an iteration
+	 * @param threshold -- the shortest iteration that is split into chunks
+	 */
+	public void setParallelism(ForkJoinPool pool, int threshold) {
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Rewrites a string the given number of times, keeping the result in this rewriter.
+	 * If the calling thread is interrupted, the rewrite stops before the next iteration.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 */
+	public void rewrite(ProductionTable table, String ls, int iterations) {
+		rewrite(table, new SymbolSequence(ls.toCharArray(), ls.length()), 0, iterations, null);
+	}
+
+	/**
+	 * Rewrites a string the given number of times, keeping the result in this rewriter and
+	 * passing every iteration to a listener.
+	 * If the calling thread is interrupted, the rewrite stops before the next iteration.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @param generation -- the iteration the string is, 0 for the axiom
+	 * @param iterations -- how many times the string is modified
+	 * @param listener -- receives every iteration with its number, or null
+	 */
+	public void rewrite(ProductionTable table, SymbolSequence ls, int generation, int iterations, GenerationListener listener) {
+		this.length = ls.length();
+		this.front = reserve(this.kept ? new char[0] : this.front, this.length);
+		ls.getChars(0, this.length, this.front, 0);
+		this.kept = false;
+		for (int i = 0; i < iterations; i++) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("L-system rewrite was interrupted");
+			}
+			int current = generation + i;
+			long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+			if (this.length >= this.threshold && this.pool.getParallelism() > 1) {
+				this.length = applyParallel(table, current);
+			} else {
+				this.back = reserve(this.back, check(count(table, current, this.front, this.length, 0, this.length)));
+				this.length = apply(table, current, this.front, this.length, 0, this.length, this.back, 0);
+			}
+			char[] temp = this.kept ? new char[0] : this.front; // The old iteration's buffer is reused unless the listener kept it
+			this.front = this.back;
+			this.back = temp;
+			this.kept = listener != null && listener.generated(current + 1, new SymbolSequence(this.front, this.length));
+			if (start != 0) {
+				Metrics.generation(current + 1, this.length, System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Returns the buffer holding the result of the last rewrite.
+	 * Only the first getLength() chars of the buffer are part of the result.
+	 * @return the buffer holding the modified string
+	 */
+	public char[] getSymbols() {
+		return this.front;
+	}
+
+	/**
+	 * Hands the buffer holding the result of the last rewrite over to the caller.
+	 * The rewriter stops using said buffer, so the caller may keep it without copying.
+	 * @return the buffer holding the modified string
+	 */
+	public char[] detach() {
+		char[] symbols = this.front;
+		this.front = new char[0];
+		this.kept = false;
+		return symbols;
+	}
+
+	/**
+	 * Returns the length of the result of the last rewrite.
+	 * @return the number of symbols in the modified string
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Replaces the current iteration in chunks on the pool and writes the result into the back buffer.
+	 * Every chunk is counted first, a prefix sum of the counts gives where each chunk is written,
+	 * and then every chunk is written straight into its place in the back buffer.
+	 * @param table -- the replacements of the L-system
+	 * @param generation -- the number of the current iteration
+	 * @return the number of symbols written
+	 */
+	private int applyParallel(ProductionTable table, int generation) {
+		int chunks = Math.max(1, Math.min(this.length / MIN_CHUNK, this.pool.getParallelism() * 4));
+		long[] offsets = new long[chunks + 1]; // offsets[k] is where chunk k is written
+		LongAdder job = Metrics.job();
+		this.pool.invoke(new ChunkTask(table, generation, this.front, this.length, null, offsets, 0, chunks, job));
+		for (int k = 0; k < chunks; k++) {
+			offsets[k + 1] += offsets[k];
+		}
+		this.back = reserve(this.back, check(offsets[chunks]));
+		this.pool.invoke(new ChunkTask(table, generation, this.front, this.length, this.back, offsets, 0, chunks, job));
+		return (int) offsets[chunks];
+	}
+
+	/**
+	 * Counts how many symbols a part of the current iteration turns into.
+	 * @param table -- the replacements of the L-system
+	 * @param generation -- the number of the current iteration
+	 * @param src -- the current iteration
+	 * @param length -- the number of symbols in the current iteration
+	 * @param from -- the index of the first symbol counted
+	 * @param to -- the index after the last symbol counted
+	 * @return the number of symbols the part turns into
+	 */
+	private static long count(ProductionTable table, int generation, char[] src, int length, int from, int to) {
+		if (!table.isSimple()) {
+			long size = 0;
+			int left = from > 0 ? src[from - 1] : Production.ANY; // The neighbours slide along with the symbol
+			for (int i = from; i < to; i++) {
+				char c = src[i];
+				int right = i + 1 < length ? src[i + 1] : Production.ANY;
+				int choice = table.choose(left, c, right, generation, i);
+				size += choice < 0 ? 1 : table.size(choice);
+				left = c;
+			}
+			return size;
+		}
+		int[] offsets = table.getOffsets();
+		int symbols = offsets.length - 1;
+		long size = 0;
+		for (int i = from; i < to; i++) {
+			char c = src[i];
+			size += c < symbols ? offsets[c + 1] - offsets[c] : 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Checks that an iteration fits in an array.
+	 * @param size -- the number of symbols in the iteration
+	 * @return the number of symbols in the iteration
+	 */
+	private static int check(long size) {
+		if (size > MAX_LENGTH) {
+			throw new IllegalStateException("L-system is too large to expand: " + size + " symbols");
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Replaces every symbol of a part of the current iteration and writes the result into dst.
+	 * @param table -- the replacements of the L-system
+	 * @param generation -- the number of the current iteration
+	 * @param src -- the current iteration
+	 * @param length -- the number of symbols in the current iteration
+	 * @param from -- the index of the first symbol replaced
+	 * @param to -- the index after the last symbol replaced
+	 * @param dst -- the buffer the next iteration is written into
+	 * @param out -- the index in dst where the first replacement is written
+	 * @return the index in dst after the last replacement
+	 */
+	private static int apply(ProductionTable table, int generation, char[] src, int length, int from, int to, char[] dst, int out) {
+		char[] rules = table.getRules();
+		if (!table.isSimple()) {
+			int left = from > 0 ? src[from - 1] : Production.ANY; // The neighbours slide along with the symbol
+			for (int i = from; i < to; i++) {
+				char c = src[i];
+				int right = i + 1 < length ? src[i + 1] : Production.ANY;
+				int choice = table.choose(left, c, right, generation, i);
+				if (choice < 0) {
+					dst[out++] = c;
+				} else {
+					System.arraycopy(rules, table.start(choice), dst, out, table.size(choice));
+					out += table.size(choice);
+				}
+				left = c;
+			}
+			return out;
+		}
+		int[] offsets = table.getOffsets();
+		int symbols = offsets.length - 1;
+		for (int i = from; i < to; i++) {
+			char c = src[i];
+			if (c >= symbols) { // Symbols past the table are copied unchanged
+				dst[out++] = c;
+				continue;
+			}
+			int start = offsets[c];
+			int slice = offsets[c + 1] - start;
+			if (slice == 1) { // Turtle commands and unmapped symbols have a slice holding only themselves
+				dst[out++] = rules[start];
+			} else {
+				System.arraycopy(rules, start, dst, out, slice);
+				out += slice;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Returns a buffer that can hold at least size chars, reusing the given one if it is large enough.
+	 * @param buffer -- the buffer currently in use
+	 * @param size -- the number of chars needed
+	 * @return a buffer with room for size chars
+	 */
+	private static char[] reserve(char[] buffer, int size) {
+		return buffer.length >= size ? buffer : new char[size];
+	}
+
+	/**
+	 * This class counts or writes a range of chunks of an iteration, splitting the range in half
+	 * until a single chunk is left.
+	 */
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private ProductionTable table;
+		private int generation;
+		private char[] src;
+		private int length;
+		private char[] dst;
+		private long[] offsets;
+		private int lo;
+		private int hi;
+		private LongAdder job;
+
+		/**
+		 * Initializes the fields required.
+		 * @param table -- the replacements of the L-system
+		 * @param generation -- the number of the current iteration
+		 * @param src -- the current iteration
+		 * @param length -- the number of symbols in the current iteration
+		 * @param dst -- the buffer the next iteration is written into, or null to count the chunks
+		 * @param offsets -- where each chunk's count is stored, or where each chunk is written
+		 * @param lo -- the first chunk of the range
+		 * @param hi -- the chunk after the last one of the range
+		 * @param job -- the count of what is allocated for the job rewriting, or null
+		 */
+		ChunkTask(ProductionTable table, int generation, char[] src, int length, char[] dst, long[] offsets, int lo, int hi, LongAdder job) {
+			this.table = table;
+			this.generation = generation;
+			this.src = src;
+			this.length = length;
+			this.dst = dst;
+			this.offsets = offsets;
+			this.lo = lo;
+			this.hi = hi;
+			this.job = job;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.hi - this.lo > 1) {
+				int mid = (this.lo + this.hi) >>> 1;
+				invokeAll(new ChunkTask(this.table, this.generation, this.src, this.length, this.dst, this.offsets, this.lo, mid, this.job),
+						new ChunkTask(this.table, this.generation, this.src, this.length, this.dst, this.offsets, mid, this.hi, this.job));
+				return;
+			}
+			long allocated = Metrics.workerStart(this.job);
+			int chunks = this.offsets.length - 1;
+			int from = (int) ((long) this.length * this.lo / chunks);
+			int to = (int) ((long) this.length * (this.lo + 1) / chunks);
+			if (this.dst == null) {
+				this.offsets[this.lo + 1] = count(this.table, this.generation, this.src, this.length, from, to);
+			} else {
+				apply(this.table, this.generation, this.src, this.length, from, to, this.dst, (int) this.offsets[this.lo]);
+			}
+			Metrics.workerStop(allocated, this.job);
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package controller;
+
+import java.util.NoSuchElementException;
+
+import model.SymbolCursor;
+/**
+ * This class reads the final L-system string one symbol at a time without ever building it.
+ * The replacements are walked depth first, keeping one position for each iteration,
+ * so the memory used grows with the number of iterations instead of the length of the string.
+ * @author Benhur J. Tadiparti
+ */
+public class SymbolStream implements SymbolCursor {
+
+	private ProductionTable table;
+	private char[][] levels;
+	private int[] positions;
+	private int depth;
+	private boolean ready;
+	private char next;
+
+	/**
+	 * Initializes the fields required.
+	 * @param table -- the replacements of the L-system
+	 * @param ls -- the string being modified
+	 * @param iterations -- how many times the string is modified
+	 * @throws IllegalArgumentException if a replacement depends on chance or context
+	 */
+	public SymbolStream(ProductionTable table, String ls, int iterations) {
+		if (!table.isSimple()) {
+			throw new IllegalArgumentException("Only L-systems whose replacements never depend on chance or context can be streamed");
+		}
+		this.table = table;
+		this.levels = new char[iterations + 1][]; // levels[i] is the replacement being read after i iterations
+		this.positions = new int[iterations + 1];
+		this.levels[0] = ls.toCharArray();
+		this.depth = 0;
+		this.ready = false;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!this.ready) {
+			advance();
+		}
+		return this.ready;
+	}
+
+	@Override
+	public char next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		this.ready = false;
+		return this.next;
+	}
+
+	/**
+	 * Finds the next symbol of the final string, replacing symbols until one is reached
+	 * on the last iteration or one that is copied unchanged.
+	 */
+	private void advance() {
+		int last = this.levels.length - 1;
+		while (this.depth >= 0) {
+			if (this.positions[this.depth] == this.levels[this.depth].length) { // Replacement finished, return to the one above
+				this.depth--;
+				continue;
+			}
+			char c = this.levels[this.depth][this.positions[this.depth]++];
+			char[] replace = this.depth < last ? this.table.get(c) : null;
+			if (replace == null) {
+				this.next = c;
+				this.ready = true;
+				return;
+			}
+			this.depth++;
+			this.levels[this.depth] = replace;
+			this.positions[this.depth] = 0;
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package graphics;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+/**
+ * This class takes memory outside of the Java heap for the line strokes and their index, and gives it back.
+ * A direct buffer is normally freed only once the garbage collector finds it, which can be long after it
+ * stopped being used; free() gives it back right away through the JVM's cleaner.
+ * The cleaner is looked up by name, since it is not part of the Java API; if the lookup fails,
+ * free() does nothing and the buffers are freed when they are collected.
+ * Direct buffers are limited by -XX:MaxDirectMemorySize, which is the maximum heap size unless it is set.
+ * @author Benhur J. Tadiparti
+ */
+final class DirectMemory {
+
+	/** Frees a direct buffer right away, or null if the JVM does not allow it. */
+	private static final MethodHandle CLEANER = cleaner();
+
+	/**
+	 * Not used, every method is static.
+	 */
+	private DirectMemory() {
+	}
+
+	/**
+	 * Takes memory outside of the heap.
+	 * @param bytes -- the size of the memory
+	 * @return a direct buffer of said size, in the byte order of the platform
+	 */
+	static ByteBuffer allocate(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Gives back the memory of a direct buffer right away, if the cleaner could be found.
+	 * Neither the buffer nor any view of it may be read afterwards.
+	 * @param buffer -- the buffer taken with allocate(), or null
+	 */
+	static void free(ByteBuffer buffer) {
+		if (buffer == null || CLEANER == null) {
+			return;
+		}
+		try {
+			CLEANER.invokeExact(buffer);
+		} catch (Throwable e) { // The buffer is freed when it is collected instead
+			return;
+		}
+	}
+
+	/**
+	 * Finds the method that frees direct buffers.
+	 * @return the method bound to the object it is called on, or null if it cannot be reached
+	 */
+	private static MethodHandle cleaner() {
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			MethodHandle invoke = MethodHandles.lookup().findVirtual(type, "invokeCleaner",
+					MethodType.methodType(void.class, ByteBuffer.class));
+			return invoke.bindTo(field.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package graphics;
+/**
+ * This interface reads the line strokes of an L-system, stored as polylines of x, y points
+ * where a point whose coordinates are both NaN is a pen jump.
+ * The points may be kept on the heap, or anywhere else they can be read from by index.
+ * @author Benhur J. Tadiparti
+ */
+public interface Geometry {
+
+	/**
+	 * Returns the number of line strokes stored.
+	 * @return the number of lines
+	 */
+	int getCount();
+
+	/**
+	 * Returns the number of floats stored, two per point.
+	 * @return the number of floats that hold points or pen jumps
+	 */
+	int getSize();
+
+	/**
+	 * Returns one coordinate of a point: x at even positions and y at odd positions.
+	 * @param i -- the position of the coordinate, less than getSize()
+	 * @return the coordinate at said position
+	 */
+	float get(int i);
+
+	/**
+	 * Returns the smallest box holding every line.
+	 * @return the smallest x, smallest y, largest x and largest y of the lines, or all zeros if there are none
+	 */
+	default double[] getBounds() {
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < getSize(); i += 2) {
+			float x = get(i);
+			if (!Float.isNaN(x)) { // Pen jumps are not points
+				float y = get(i + 1);
+				minX = Math.min(minX, x);
+				minY = Math.min(minY, y);
+				maxX = Math.max(maxX, x);
+				maxY = Math.max(maxY, y);
+			}
+		}
+		return getCount() == 0 ? new double[4] : new double[] { minX, minY, maxX, maxY };
+	}
+
+	/**
+	 * Gives back the memory holding the lines right away, instead of when the garbage collector finds it.
+	 * The geometry must not be read afterwards. Does nothing unless the lines are kept outside of the heap.
+	 */
+	default void free() {
+	}
+
+}
@@ -0,0 +1,17 @@
+package graphics;
+/**
+ * This interface receives the line strokes of an L-system as the turtle draws them.
+ * @author Benhur J. Tadiparti
+ */
+public interface LineSink {
+
+	/**
+	 * Receives one line stroke.
+	 * @param x1 -- the x coordinate where the line starts
+	 * @param y1 -- the y coordinate where the line starts
+	 * @param x2 -- the x coordinate where the line ends
+	 * @param y2 -- the y coordinate where the line ends
+	 */
+	void line(double x1, double y1, double x2, double y2);
+
+}
@@ -0,0 +1,178 @@
+package graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+/**
+ * This class stores the line strokes of an L-system outside of the Java heap, in direct buffers,
+ * so the number of lines a render can hold is not limited by the heap and the garbage collector never copies them.
+ * The points are appended to fixed size chunks; a full chunk is never moved or copied, a new one is added after it.
+ * Lines are stored as polylines of x, y points, with a point whose coordinates are both NaN as a pen jump,
+ * the same as SegmentBuffer.
+ * The memory is given back by free(), without waiting for the buffers to be collected.
+ * Direct buffers are limited by -XX:MaxDirectMemorySize, which is the maximum heap size unless it is set.
+ * @author Benhur J. Tadiparti
+ */
+public class OffHeapSegments implements LineSink, Geometry {
+
+	/** The number of floats in a chunk, as a power of two so a position splits into a chunk and an offset by shifting. */
+	public static final int CHUNK_BITS = 20;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private ByteBuffer[] memory;
+	private FloatBuffer[] chunks;
+	private int used;
+	private int size;
+	private int count;
+	private float lastX;
+	private float lastY;
+
+	/**
+	 * Initializes an empty store. No memory is taken until the first line is added.
+	 */
+	public OffHeapSegments() {
+		this.memory = new ByteBuffer[4];
+		this.chunks = new FloatBuffer[4];
+		this.used = 0;
+		clear();
+	}
+
+	@Override
+	public void line(double x1, double y1, double x2, double y2) {
+		float startX = (float) x1;
+		float startY = (float) y1;
+		if (this.size == 0 || startX != this.lastX || startY != this.lastY) { // The pen jumped, so start a new polyline
+			if (this.size > 0) {
+				add(Float.NaN, Float.NaN);
+			}
+			add(startX, startY);
+		}
+		this.lastX = (float) x2;
+		this.lastY = (float) y2;
+		add(this.lastX, this.lastY);
+		this.count++;
+	}
+
+	@Override
+	public int getCount() {
+		return this.count;
+	}
+
+	@Override
+	public int getSize() {
+		return this.size;
+	}
+
+	@Override
+	public float get(int i) {
+		return this.chunks[i >>> CHUNK_BITS].get(i & CHUNK_MASK);
+	}
+
+	/**
+	 * Returns how many bytes of memory outside of the heap the store holds.
+	 * @return the size of the chunks taken so far
+	 */
+	public long getBytes() {
+		return (long) this.used * CHUNK_SIZE * Float.BYTES;
+	}
+
+	/**
+	 * Grows the store by lines whose points other writers put in place with set(), taking the chunks they need.
+	 * @param size -- the number of floats stored once the lines are added
+	 * @param count -- the number of lines stored once the lines are added
+	 * @param lastX -- the x coordinate where the last line ends
+	 * @param lastY -- the y coordinate where the last line ends
+	 */
+	void extend(int size, int count, float lastX, float lastY) {
+		while ((long) this.used * CHUNK_SIZE < size) {
+			take();
+		}
+		this.size = size;
+		this.count = count;
+		this.lastX = lastX;
+		this.lastY = lastY;
+	}
+
+	/**
+	 * Writes one coordinate of a point that extend() made room for. Writers on different threads
+	 * may write different positions at the same time.
+	 * @param i -- the position of the coordinate
+	 * @param value -- the coordinate
+	 */
+	void set(int i, float value) {
+		this.chunks[i >>> CHUNK_BITS].put(i & CHUNK_MASK, value);
+	}
+
+	/**
+	 * Returns the x coordinate where the last line ends.
+	 * @return the x coordinate of the last point, if a line is stored
+	 */
+	float getLastX() {
+		return this.lastX;
+	}
+
+	/**
+	 * Returns the y coordinate where the last line ends.
+	 * @return the y coordinate of the last point, if a line is stored
+	 */
+	float getLastY() {
+		return this.lastY;
+	}
+
+	/**
+	 * Removes every line from the store, keeping its chunks for reuse.
+	 */
+	public void clear() {
+		this.size = 0;
+		this.count = 0;
+	}
+
+	/**
+	 * Removes every line from the store and gives its chunks back to the operating system.
+	 * No reader may use the store, or a buffer read from it, while or after it is freed.
+	 */
+	@Override
+	public void free() {
+		for (int c = 0; c < this.used; c++) {
+			DirectMemory.free(this.memory[c]);
+			this.memory[c] = null;
+			this.chunks[c] = null;
+		}
+		this.used = 0;
+		clear();
+	}
+
+	/**
+	 * Adds a point to the end of the store, taking a new chunk if the last one is full.
+	 * @param x -- the x coordinate of the point
+	 * @param y -- the y coordinate of the point
+	 */
+	private void add(float x, float y) {
+		if (this.size == this.used * CHUNK_SIZE) { // Chunks hold an even number of floats, so a point is never split
+			if (this.size > Integer.MAX_VALUE - CHUNK_SIZE) {
+				throw new IllegalStateException("Too many lines to store: " + this.count);
+			}
+			take();
+		}
+		FloatBuffer chunk = this.chunks[this.size >>> CHUNK_BITS];
+		chunk.put(this.size & CHUNK_MASK, x);
+		chunk.put((this.size + 1) & CHUNK_MASK, y);
+		this.size += 2;
+	}
+
+	/**
+	 * Adds a chunk after the last one.
+	 */
+	private void take() {
+		if (this.used == this.chunks.length) {
+			this.memory = Arrays.copyOf(this.memory, this.used * 2);
+			this.chunks = Arrays.copyOf(this.chunks, this.used * 2);
+		}
+		this.memory[this.used] = DirectMemory.allocate(CHUNK_SIZE * Float.BYTES);
+		this.chunks[this.used] = this.memory[this.used].asFloatBuffer();
+		this.used++;
+	}
+
+}
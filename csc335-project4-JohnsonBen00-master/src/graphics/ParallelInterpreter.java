@@ -0,0 +1,587 @@
+package graphics;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import metrics.Metrics;
+import model.SymbolCursor;
+import model.SymbolSequence;
+/**
+ * This class reads the symbols of an L-system on many threads at once, and stores exactly the line strokes
+ * a single TurtleGraphics would store reading them from left to right.
+ * The symbols are split into chunks, and what a chunk does to the turtle is summarised relative to where it starts:
+ * how many steps it takes in every heading counted from its starting heading, how far it turns, how many states
+ * stored before it are restored by its ']', and where the states it stores with '[' and leaves stored are.
+ * Every chunk is summarised at the same time; the summaries are combined from left to right, which only takes
+ * a few operations per chunk, to find the state every chunk starts in; and then every chunk is read by its own turtle.
+ * Positions are in fixed point, so adding up the steps of a summary gives exactly the position the turtle
+ * reaches one step at a time, and the lines are the same to the last bit.
+ * As the Rewriter does, every chunk is counted before it is written, and a prefix sum of the counts gives
+ * where each chunk writes its points straight into the store.
+ * @author Benhur J. Tadiparti
+ */
+public class ParallelInterpreter {
+
+	/** Strings shorter than this are read by a single turtle. */
+	public static final int PARALLEL_THRESHOLD = 1 << 20;
+
+	/** The fewest symbols a chunk is given, so tasks are not smaller than their overhead. */
+	private static final int MIN_CHUNK = 1 << 16;
+
+	/** What a pass over the chunks does: summarise them, count their points, or write them. */
+	private static final int SUMMARISE = 0, COUNT = 1, WRITE = 2;
+
+	private ForkJoinPool pool;
+	private int threshold;
+
+	/**
+	 * Initializes an interpreter that reads strings of at least PARALLEL_THRESHOLD symbols on the common pool.
+	 */
+	public ParallelInterpreter() {
+		this(ForkJoinPool.commonPool(), PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Initializes the fields required.
+	 * @param pool -- the pool that reads the chunks of a string
+	 * @param threshold -- the shortest string that is split into chunks
+	 */
+	public ParallelInterpreter(ForkJoinPool pool, int threshold) {
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Reads the symbols of the L-system, looking up the command of each symbol in a table, and stores every line stroke.
+	 * The turtle is left in the state it would be in had it read the symbols itself.
+	 * @param turtle -- the turtle, which gives where the symbols start and the steps it takes
+	 * @param symbols -- the symbols of the L-system
+	 * @param commands -- the command of every symbol, indexed by symbol; symbols past its end give none
+	 * @param segments -- where the line strokes are stored
+	 * @param cancelled -- checked before every chunk is read; once it is true the reading stops
+	 * @throws CancellationException if the reading was cancelled
+	 */
+	public void draw(TurtleGraphics turtle, SymbolSequence symbols, byte[] commands, OffHeapSegments segments, BooleanSupplier cancelled) {
+		if (symbols.length() < this.threshold || this.pool.getParallelism() < 2) {
+			turtle.draw(symbols.cursor(), commands, segments);
+			return;
+		}
+		int count = Math.max(1, Math.min(symbols.length() / MIN_CHUNK, this.pool.getParallelism() * 4));
+		Chunk[] chunks = new Chunk[count];
+		for (int k = 0; k < count; k++) {
+			chunks[k] = new Chunk((int) ((long) symbols.length() * k / count), (int) ((long) symbols.length() * (k + 1) / count));
+		}
+		Reading reading = new Reading(turtle, symbols, commands, segments, cancelled, chunks);
+		this.pool.invoke(new Pass(reading, SUMMARISE, 0, count));
+		State end = scan(turtle, chunks);
+		this.pool.invoke(new Pass(reading, COUNT, 0, count));
+		place(segments, chunks);
+		this.pool.invoke(new Pass(reading, WRITE, 0, count));
+		int deepest = turtle.getMaxDepth();
+		for (Chunk chunk : chunks) {
+			deepest = Math.max(deepest, chunk.deepest);
+		}
+		turtle.restore(end.x, end.y, end.heading, end.stack, end.depth, deepest);
+	}
+
+	/**
+	 * Combines the summaries of the chunks from left to right, storing the state every chunk starts in.
+	 * @param turtle -- the turtle the symbols start at
+	 * @param chunks -- the summarised chunks
+	 * @return the state the turtle is in after the last chunk
+	 */
+	private static State scan(TurtleGraphics turtle, Chunk[] chunks) {
+		long[] frames = turtle.getFrames();
+		State state = new State(turtle.getFixedX(), turtle.getFixedY(), turtle.getHeading(), frames, frames.length / 3);
+		int headings = turtle.getHeadings();
+		for (Chunk chunk : chunks) {
+			Moves moves = chunk.moves;
+			chunk.x = state.x;
+			chunk.y = state.y;
+			chunk.heading = state.heading;
+			chunk.depth = state.depth;
+			chunk.seeds = Math.min(chunk.pops, state.depth); // The only stored states the chunk can restore
+			chunk.frames = Arrays.copyOfRange(state.stack, 3 * (state.depth - chunk.seeds), 3 * state.depth);
+			int m = 0;
+			for (int p = 0; p < chunk.pops; p++, m++) { // Moves, then restores a state stored before the chunk
+				state.x += moves.stepX(m, turtle, state.heading);
+				state.y += moves.stepY(m, turtle, state.heading);
+				state.heading = (state.heading + moves.turn(m)) % headings;
+				state.pop();
+			}
+			long x = state.x;
+			long y = state.y;
+			for (int f = 0; f < chunk.pushes; f++, m++) { // Stores the states the chunk leaves stored
+				x += moves.stepX(m, turtle, state.heading);
+				y += moves.stepY(m, turtle, state.heading);
+				state.push(x, y, (state.heading + moves.turn(m)) % headings);
+			}
+			state.x = x + moves.stepX(m, turtle, state.heading);
+			state.y = y + moves.stepY(m, turtle, state.heading);
+			state.heading = (state.heading + moves.turn(m)) % headings;
+		}
+		return state;
+	}
+
+	/**
+	 * Decides where every chunk writes its points, from the points it counted and whether its first line continues
+	 * the line before it, and makes room for them in the store.
+	 * @param segments -- where the line strokes are stored
+	 * @param chunks -- the counted chunks
+	 */
+	private static void place(OffHeapSegments segments, Chunk[] chunks) {
+		long size = segments.getSize();
+		int count = segments.getCount();
+		boolean started = size > 0;
+		float lastX = segments.getLastX();
+		float lastY = segments.getLastY();
+		for (Chunk chunk : chunks) {
+			chunk.offset = (int) size;
+			chunk.started = started;
+			chunk.lastX = lastX;
+			chunk.lastY = lastY;
+			if (chunk.lines.count > 0) {
+				size += chunk.lines.position;
+				if (started) { // Either the first point is not written again, or a pen jump comes before it
+					size += chunk.lines.firstX == lastX && chunk.lines.firstY == lastY ? -2 : 2;
+				}
+				if (size > Integer.MAX_VALUE - (1 << OffHeapSegments.CHUNK_BITS)) {
+					throw new IllegalStateException("Too many lines to store: " + count);
+				}
+				count += chunk.lines.count;
+				started = true;
+				lastX = chunk.lines.lastX;
+				lastY = chunk.lines.lastY;
+			}
+		}
+		segments.extend((int) size, count, lastX, lastY);
+	}
+
+	/**
+	 * This class is the state of the turtle while the summaries are combined.
+	 */
+	private static class State {
+
+		private long x;
+		private long y;
+		private int heading;
+		private long[] stack;
+		private int depth;
+
+		/**
+		 * Initializes the fields required.
+		 * @param x -- the x coordinate in fixed point
+		 * @param y -- the y coordinate in fixed point
+		 * @param heading -- the index of the heading
+		 * @param stack -- the stored states as x, y and heading, oldest first
+		 * @param depth -- the number of stored states
+		 */
+		State(long x, long y, int heading, long[] stack, int depth) {
+			this.x = x;
+			this.y = y;
+			this.heading = heading;
+			this.stack = stack.length == 0 ? new long[3 * 16] : stack;
+			this.depth = depth;
+		}
+
+		/**
+		 * Stores a state, doubling the stack if it is full.
+		 * @param x -- the x coordinate in fixed point
+		 * @param y -- the y coordinate in fixed point
+		 * @param heading -- the index of the heading
+		 */
+		void push(long x, long y, int heading) {
+			if (3 * this.depth + 3 > this.stack.length) {
+				this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+			}
+			this.stack[3 * this.depth] = x;
+			this.stack[3 * this.depth + 1] = y;
+			this.stack[3 * this.depth + 2] = heading;
+			this.depth++;
+		}
+
+		/**
+		 * Returns to the state stored last, or does nothing if no state is stored, as the turtle does.
+		 */
+		void pop() {
+			if (this.depth == 0) {
+				return;
+			}
+			this.depth--;
+			this.x = this.stack[3 * this.depth];
+			this.y = this.stack[3 * this.depth + 1];
+			this.heading = (int) this.stack[3 * this.depth + 2];
+		}
+
+	}
+
+	/**
+	 * This class is a list of moves relative to a starting heading: for each move, how many steps it takes
+	 * in every heading counted from the starting one, and how far it turns in the end.
+	 * Only the headings a move takes steps in are stored.
+	 */
+	private static class Moves {
+
+		private int size;
+		private int[] turns;
+		private int[] offsets;
+		private int[] steps;
+		private int used;
+
+		/**
+		 * Initializes an empty list.
+		 */
+		Moves() {
+			this.turns = new int[4];
+			this.offsets = new int[5];
+			this.steps = new int[16];
+		}
+
+		/**
+		 * Adds a move that takes the steps of part of a journal.
+		 * @param journal -- the heading of every step, counted from the starting heading
+		 * @param from -- the first step of the move
+		 * @param to -- the step after the last step of the move
+		 * @param turn -- how far the move turns, counted from the starting heading
+		 * @param slots -- one zero per heading, used while the steps are counted and zero again afterwards
+		 */
+		void add(int[] journal, int from, int to, int turn, int[] slots) {
+			if (this.size + 1 == this.turns.length) {
+				this.turns = Arrays.copyOf(this.turns, this.turns.length * 2);
+				this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+			}
+			int start = this.used;
+			for (int i = from; i < to; i++) {
+				int h = journal[i];
+				if (slots[h] == 0) { // The first step in this heading
+					if (this.used + 2 > this.steps.length) {
+						this.steps = Arrays.copyOf(this.steps, this.steps.length * 2);
+					}
+					this.steps[this.used] = h;
+					this.steps[this.used + 1] = 0;
+					this.used += 2;
+					slots[h] = this.used;
+				}
+				this.steps[slots[h] - 1]++;
+			}
+			for (int p = start; p < this.used; p += 2) {
+				slots[this.steps[p]] = 0;
+			}
+			this.turns[this.size] = turn;
+			this.offsets[++this.size] = this.used;
+		}
+
+		/**
+		 * Returns how far right a move goes from a heading.
+		 * @param m -- the index of the move
+		 * @param turtle -- the turtle whose steps are taken
+		 * @param heading -- the index of the heading the move starts in
+		 * @return the x part of the move in fixed point
+		 */
+		long stepX(int m, TurtleGraphics turtle, int heading) {
+			long x = 0;
+			for (int p = this.offsets[m]; p < this.offsets[m + 1]; p += 2) {
+				x += this.steps[p + 1] * turtle.getStepX((heading + this.steps[p]) % turtle.getHeadings());
+			}
+			return x;
+		}
+
+		/**
+		 * Returns how far down a move goes from a heading.
+		 * @param m -- the index of the move
+		 * @param turtle -- the turtle whose steps are taken
+		 * @param heading -- the index of the heading the move starts in
+		 * @return the y part of the move in fixed point
+		 */
+		long stepY(int m, TurtleGraphics turtle, int heading) {
+			long y = 0;
+			for (int p = this.offsets[m]; p < this.offsets[m + 1]; p += 2) {
+				y += this.steps[p + 1] * turtle.getStepY((heading + this.steps[p]) % turtle.getHeadings());
+			}
+			return y;
+		}
+
+		/**
+		 * Returns how far a move turns.
+		 * @param m -- the index of the move
+		 * @return the number of left turns, counted from the heading the move starts in
+		 */
+		int turn(int m) {
+			return this.turns[m];
+		}
+
+	}
+
+	/**
+	 * This class is a range of the symbols: its summary, the state it starts in, and where its points are written.
+	 */
+	private static class Chunk {
+
+		private int from;
+		private int to;
+		private Moves moves;
+		private int pops;
+		private int pushes;
+		private long x;
+		private long y;
+		private int heading;
+		private int depth;
+		private int seeds;
+		private long[] frames;
+		private Lines lines;
+		private int offset;
+		private boolean started;
+		private float lastX;
+		private float lastY;
+		private int deepest;
+
+		/**
+		 * Initializes the fields required.
+		 * @param from -- the index of the first symbol of the chunk
+		 * @param to -- the index after the last symbol of the chunk
+		 */
+		Chunk(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Summarises what the chunk does to a turtle, relative to where it starts.
+		 * The journal holds the heading of every step on the turtle's current path: a ']' that restores a state stored
+		 * in the chunk drops the steps taken since, and one that restores a state stored before the chunk ends a move.
+		 * @param symbols -- the symbols of the L-system
+		 * @param commands -- the command of every symbol
+		 * @param headings -- the number of headings the turtle can face
+		 */
+		void summarise(SymbolSequence symbols, byte[] commands, int headings) {
+			this.moves = new Moves();
+			int[] slots = new int[headings];
+			int[] journal = new int[64];
+			int length = 0;
+			int[] saved = new int[32]; // The journal length and heading at every '[' still open
+			int depth = 0;
+			int heading = 0;
+			SymbolCursor cursor = symbols.cursor(this.from, this.to);
+			while (cursor.hasNext()) {
+				char c = cursor.next();
+				switch (c < commands.length ? commands[c] : TurtleGraphics.NONE) {
+				case TurtleGraphics.DRAW:
+					if (length == journal.length) {
+						journal = Arrays.copyOf(journal, length * 2);
+					}
+					journal[length++] = heading;
+					break;
+				case TurtleGraphics.LEFT:
+					heading = heading + 1 == headings ? 0 : heading + 1;
+					break;
+				case TurtleGraphics.RIGHT:
+					heading = heading == 0 ? headings - 1 : heading - 1;
+					break;
+				case TurtleGraphics.PUSH:
+					if (2 * depth + 2 > saved.length) {
+						saved = Arrays.copyOf(saved, saved.length * 2);
+					}
+					saved[2 * depth] = length;
+					saved[2 * depth + 1] = heading;
+					depth++;
+					break;
+				case TurtleGraphics.POP:
+					if (depth > 0) {
+						depth--;
+						length = saved[2 * depth];
+						heading = saved[2 * depth + 1];
+					} else { // Restores a state stored before the chunk, which the moves after start from
+						this.moves.add(journal, 0, length, heading, slots);
+						this.pops++;
+						length = 0;
+						heading = 0;
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			int start = 0;
+			for (int f = 0; f < depth; f++) { // Each stored state, as a move from the one before it
+				this.moves.add(journal, start, saved[2 * f], saved[2 * f + 1], slots);
+				start = saved[2 * f];
+			}
+			this.pushes = depth;
+			this.moves.add(journal, start, length, heading, slots);
+		}
+
+		/**
+		 * Reads the chunk with its own turtle from the state it starts in, counting or writing its points.
+		 * @param reading -- what is being read
+		 * @param segments -- where the points are written, or null to count them
+		 */
+		void interpret(Reading reading, OffHeapSegments segments) {
+			TurtleGraphics turtle = new TurtleGraphics(reading.turtle);
+			turtle.restore(this.x, this.y, this.heading, this.frames, this.seeds, 0);
+			Lines lines = segments == null ? new Lines(null, 0, false, 0, 0) : new Lines(segments, this.offset, this.started, this.lastX, this.lastY);
+			turtle.draw(reading.symbols.cursor(this.from, this.to), reading.commands, lines);
+			if (segments == null) {
+				this.lines = lines;
+			}
+			this.deepest = this.depth - this.seeds + turtle.getMaxDepth();
+		}
+
+	}
+
+	/**
+	 * This class receives the line strokes of a chunk and stores their points as OffHeapSegments does,
+	 * starting a new polyline only when a line does not start where the last one ended,
+	 * or only counts them.
+	 */
+	private static class Lines implements LineSink {
+
+		private OffHeapSegments segments;
+		private int position;
+		private boolean started;
+		private float lastX;
+		private float lastY;
+		private float firstX;
+		private float firstY;
+		private int count;
+
+		/**
+		 * Initializes the fields required.
+		 * @param segments -- where the points are written, or null to count them
+		 * @param position -- where the first point is written
+		 * @param started -- whether a line was stored before the first one
+		 * @param lastX -- the x coordinate where the line before the first one ended
+		 * @param lastY -- the y coordinate where the line before the first one ended
+		 */
+		Lines(OffHeapSegments segments, int position, boolean started, float lastX, float lastY) {
+			this.segments = segments;
+			this.position = position;
+			this.started = started;
+			this.lastX = lastX;
+			this.lastY = lastY;
+		}
+
+		@Override
+		public void line(double x1, double y1, double x2, double y2) {
+			float startX = (float) x1;
+			float startY = (float) y1;
+			if (this.count == 0) {
+				this.firstX = startX;
+				this.firstY = startY;
+			}
+			if (!this.started || startX != this.lastX || startY != this.lastY) { // The pen jumped, so start a new polyline
+				if (this.started) {
+					add(Float.NaN, Float.NaN);
+				}
+				add(startX, startY);
+			}
+			this.lastX = (float) x2;
+			this.lastY = (float) y2;
+			add(this.lastX, this.lastY);
+			this.started = true;
+			this.count++;
+		}
+
+		/**
+		 * Writes or counts a point.
+		 * @param x -- the x coordinate of the point
+		 * @param y -- the y coordinate of the point
+		 */
+		private void add(float x, float y) {
+			if (this.segments != null) {
+				this.segments.set(this.position, x);
+				this.segments.set(this.position + 1, y);
+			}
+			this.position += 2;
+		}
+
+	}
+
+	/**
+	 * This class is what one call to draw() reads, shared by the passes over its chunks.
+	 */
+	private static class Reading {
+
+		private TurtleGraphics turtle;
+		private SymbolSequence symbols;
+		private byte[] commands;
+		private OffHeapSegments segments;
+		private BooleanSupplier cancelled;
+		private Chunk[] chunks;
+		private LongAdder job;
+
+		/**
+		 * Initializes the fields required, on the thread that reads the symbols so its job is counted.
+		 * @param turtle -- the turtle the symbols start at
+		 * @param symbols -- the symbols of the L-system
+		 * @param commands -- the command of every symbol
+		 * @param segments -- where the line strokes are stored
+		 * @param cancelled -- checked before every chunk is read
+		 * @param chunks -- the chunks of the symbols
+		 */
+		Reading(TurtleGraphics turtle, SymbolSequence symbols, byte[] commands, OffHeapSegments segments,
+				BooleanSupplier cancelled, Chunk[] chunks) {
+			this.turtle = turtle;
+			this.symbols = symbols;
+			this.commands = commands;
+			this.segments = segments;
+			this.cancelled = cancelled;
+			this.chunks = chunks;
+			this.job = Metrics.job();
+		}
+
+	}
+
+	/**
+	 * This class summarises, counts or writes a range of chunks, splitting the range in half
+	 * until a single chunk is left.
+	 */
+	private static class Pass extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private Reading reading;
+		private int mode;
+		private int lo;
+		private int hi;
+
+		/**
+		 * Initializes the fields required.
+		 * @param reading -- what is being read
+		 * @param mode -- SUMMARISE, COUNT or WRITE
+		 * @param lo -- the first chunk of the range
+		 * @param hi -- the chunk after the last one of the range
+		 */
+		Pass(Reading reading, int mode, int lo, int hi) {
+			this.reading = reading;
+			this.mode = mode;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.hi - this.lo > 1) {
+				int mid = (this.lo + this.hi) >>> 1;
+				invokeAll(new Pass(this.reading, this.mode, this.lo, mid), new Pass(this.reading, this.mode, mid, this.hi));
+				return;
+			}
+			if (this.reading.cancelled.getAsBoolean()) {
+				throw new CancellationException();
+			}
+			long allocated = Metrics.workerStart(this.reading.job);
+			Chunk chunk = this.reading.chunks[this.lo];
+			if (this.mode == SUMMARISE) {
+				chunk.summarise(this.reading.symbols, this.reading.commands, this.reading.turtle.getHeadings());
+			} else {
+				chunk.interpret(this.reading, this.mode == WRITE ? this.reading.segments : null);
+			}
+			Metrics.workerStop(allocated, this.reading.job);
+		}
+
+	}
+
+}
@@ -0,0 +1,160 @@
+package graphics;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+/**
+ * This class writes an 8-bit grayscale PNG image one row at a time, so an image of any size
+ * can be written while only one row of it is in memory.
+ * @author Benhur J. Tadiparti
+ */
+public class PngWriter implements AutoCloseable {
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private DataOutputStream out;
+	private DeflaterOutputStream pixels;
+	private ChunkStream idat;
+	private Deflater deflater;
+	private int width;
+	private int height;
+	private int rows;
+
+	/**
+	 * Writes the header of the image.
+	 * @param out -- where the image is written
+	 * @param width -- the width of the image in pixels
+	 * @param height -- the height of the image in pixels
+	 * @throws IOException if the header cannot be written
+	 */
+	public PngWriter(OutputStream out, int width, int height) throws IOException {
+		this.out = new DataOutputStream(out);
+		this.width = width;
+		this.height = height;
+		this.rows = 0;
+		this.out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		writeInt(header, 0, width);
+		writeInt(header, 4, height);
+		header[8] = 8; // Bits per pixel
+		header[9] = 0; // Grayscale
+		chunk("IHDR", header, header.length);
+		this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		this.idat = new ChunkStream();
+		this.pixels = new DeflaterOutputStream(this.idat, this.deflater, 1 << 16);
+	}
+
+	/**
+	 * Writes the next row of the image.
+	 * @param row -- the gray value of every pixel in the row, 0 for black and 255 for white
+	 * @param offset -- where the row starts in the array
+	 * @throws IOException if the row cannot be written
+	 */
+	public void writeRow(byte[] row, int offset) throws IOException {
+		if (this.rows == this.height) {
+			throw new IllegalStateException("All " + this.height + " rows were already written");
+		}
+		this.pixels.write(0); // No filter
+		this.pixels.write(row, offset, this.width);
+		this.rows++;
+	}
+
+	/**
+	 * Finishes the image. Every row must have been written.
+	 * The native memory of the compressor is given back even if the image cannot be finished.
+	 * @throws IOException if the end of the image cannot be written
+	 * @throws IllegalStateException if rows are missing
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.rows != this.height) {
+				throw new IllegalStateException("Only " + this.rows + " of " + this.height + " rows were written");
+			}
+			this.pixels.finish();
+			this.idat.flush();
+			chunk("IEND", new byte[0], 0);
+			this.out.flush();
+		} finally {
+			this.deflater.end();
+		}
+	}
+
+	/**
+	 * Writes one chunk of the image.
+	 * @param type -- the four letter type of the chunk
+	 * @param data -- the contents of the chunk
+	 * @param length -- the number of bytes of data used
+	 * @throws IOException if the chunk cannot be written
+	 */
+	private void chunk(String type, byte[] data, int length) throws IOException {
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, 0, length);
+		this.out.writeInt(length);
+		this.out.write(name);
+		this.out.write(data, 0, length);
+		this.out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Stores an int in an array, most significant byte first.
+	 * @param data -- the array
+	 * @param offset -- where the int is stored
+	 * @param value -- the int being stored
+	 */
+	private static void writeInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) (value >>> 24);
+		data[offset + 1] = (byte) (value >>> 16);
+		data[offset + 2] = (byte) (value >>> 8);
+		data[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * This class collects the compressed pixels and writes them out as IDAT chunks.
+	 */
+	private class ChunkStream extends OutputStream {
+
+		private byte[] buffer = new byte[1 << 16];
+		private int size = 0;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = Math.min(len, this.buffer.length - this.size);
+				System.arraycopy(b, off, this.buffer, this.size, n);
+				this.size += n;
+				off += n;
+				len -= n;
+				if (this.size == this.buffer.length) {
+					flush();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (this.size > 0) {
+				chunk("IDAT", this.buffer, this.size);
+				this.size = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+package graphics;
+
+import java.util.Arrays;
+/**
+ * This class stores the line strokes of an L-system in a float array, so the geometry can be
+ * computed on one thread and drawn on another.
+ * Lines that continue where the previous line ended are stored as one polyline of x, y points.
+ * A point whose coordinates are both NaN is a pen jump: the next point starts a new polyline.
+ * @author Benhur J. Tadiparti
+ */
+public class SegmentBuffer implements LineSink, Geometry {
+
+	private float[] coords;
+	private int size;
+	private int count;
+	private float lastX;
+	private float lastY;
+
+	/**
+	 * Initializes an empty buffer.
+	 */
+	public SegmentBuffer() {
+		this.coords = new float[64];
+		clear();
+	}
+
+	@Override
+	public void line(double x1, double y1, double x2, double y2) {
+		float startX = (float) x1;
+		float startY = (float) y1;
+		if (this.size == 0 || startX != this.lastX || startY != this.lastY) { // The pen jumped, so start a new polyline
+			if (this.size > 0) {
+				add(Float.NaN, Float.NaN);
+			}
+			add(startX, startY);
+		}
+		this.lastX = (float) x2;
+		this.lastY = (float) y2;
+		add(this.lastX, this.lastY);
+		this.count++;
+	}
+
+	@Override
+	public int getCount() {
+		return this.count;
+	}
+
+	@Override
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the array holding the polylines, stored as x, y for each point.
+	 * Only the first getSize() floats of the array are used.
+	 * @return the array holding the points of the polylines
+	 */
+	public float[] getCoords() {
+		return this.coords;
+	}
+
+	@Override
+	public float get(int i) {
+		return this.coords[i];
+	}
+
+	/**
+	 * Removes every line from the buffer, keeping its array for reuse.
+	 */
+	public void clear() {
+		this.size = 0;
+		this.count = 0;
+	}
+
+	/**
+	 * Adds a point to the end of the buffer, doubling the room in the buffer if it is full.
+	 * @param x -- the x coordinate of the point
+	 * @param y -- the y coordinate of the point
+	 */
+	private void add(float x, float y) {
+		if (this.size + 2 > this.coords.length) {
+			if (this.coords.length >= Integer.MAX_VALUE / 2) {
+				throw new IllegalStateException("Too many lines to store: " + this.count);
+			}
+			this.coords = Arrays.copyOf(this.coords, this.coords.length * 2);
+		}
+		this.coords[this.size++] = x;
+		this.coords[this.size++] = y;
+	}
+
+}
@@ -0,0 +1,308 @@
+package graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+/**
+ * This class indexes the line strokes of a Geometry by the square cells of a grid they touch,
+ * so a renderer can find the lines inside an area without reading every line.
+ * The lines of every cell are listed in the order they are stored.
+ * The index holds at least one entry per line, so it is kept outside of the heap in chunks, like OffHeapSegments;
+ * only the start of every cell is on the heap. free() gives the index back; the lines belong to the caller.
+ * Cells with more lines than a renderer can tell apart can also be summarised into a bitmap of the pixels
+ * their lines cover, whose size depends on the cell and not on its lines.
+ * @author Benhur J. Tadiparti
+ */
+public class SegmentGrid {
+
+	/** The number of entries in a chunk of the index, as a power of two. */
+	private static final int CHUNK_BITS = 20;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private Geometry segments;
+	private double left;
+	private double top;
+	private double cell;
+	private int columns;
+	private int rows;
+	private int[] offsets;
+	private ByteBuffer[] memory;
+	private IntBuffer[] indexes;
+	private int resolution;
+	private long[][] coverage;
+
+	/**
+	 * Builds the index. Lines outside of the width and height of the grid are left out.
+	 * @param segments -- the line strokes being indexed
+	 * @param width -- the width of the area covered by the grid
+	 * @param height -- the height of the area covered by the grid
+	 * @param cell -- the width and height of a cell
+	 */
+	public SegmentGrid(Geometry segments, int width, int height, int cell) {
+		this(segments, 0, 0, cell, (width + cell - 1) / cell, (height + cell - 1) / cell);
+	}
+
+	/**
+	 * Builds the index over a grid placed anywhere. Lines outside of the grid are left out.
+	 * @param segments -- the line strokes being indexed
+	 * @param left -- the x coordinate of the left edge of the grid
+	 * @param top -- the y coordinate of the top edge of the grid
+	 * @param cell -- the width and height of a cell
+	 * @param columns -- the number of columns of cells
+	 * @param rows -- the number of rows of cells
+	 */
+	public SegmentGrid(Geometry segments, double left, double top, double cell, int columns, int rows) {
+		this.segments = segments;
+		this.left = left;
+		this.top = top;
+		this.cell = cell;
+		this.columns = columns;
+		this.rows = rows;
+		this.offsets = new int[this.columns * this.rows + 1];
+		int[] range = new int[4];
+		long total = 0;
+		for (int i = 0; i + 3 < segments.getSize(); i += 2) { // Counts the lines in every cell
+			if (cells(segments, i, range)) {
+				for (int row = range[1]; row <= range[3]; row++) {
+					for (int column = range[0]; column <= range[2]; column++) {
+						this.offsets[row * this.columns + column + 1]++;
+					}
+				}
+				total += (long) (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+			}
+		}
+		if (total > Integer.MAX_VALUE - CHUNK_SIZE) {
+			throw new IllegalStateException("Too many lines to index: " + total);
+		}
+		for (int c = 0; c < this.columns * this.rows; c++) { // Where each cell's lines start in the index
+			this.offsets[c + 1] += this.offsets[c];
+		}
+		int chunks = (int) ((total + CHUNK_MASK) >>> CHUNK_BITS);
+		this.memory = new ByteBuffer[chunks];
+		this.indexes = new IntBuffer[chunks];
+		for (int c = 0; c < chunks; c++) {
+			this.memory[c] = DirectMemory.allocate(CHUNK_SIZE * Integer.BYTES);
+			this.indexes[c] = this.memory[c].asIntBuffer();
+		}
+		int[] next = this.offsets.clone();
+		for (int i = 0; i + 3 < segments.getSize(); i += 2) {
+			if (cells(segments, i, range)) {
+				for (int row = range[1]; row <= range[3]; row++) {
+					for (int column = range[0]; column <= range[2]; column++) {
+						int k = next[row * this.columns + column]++;
+						this.indexes[k >>> CHUNK_BITS].put(k & CHUNK_MASK, i);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the line strokes that were indexed.
+	 * @return the geometry holding the lines
+	 */
+	public Geometry getSegments() {
+		return this.segments;
+	}
+
+	/**
+	 * Returns where the grid starts.
+	 * @return the x coordinate of the left edge of the grid
+	 */
+	public double getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * Returns where the grid starts.
+	 * @return the y coordinate of the top edge of the grid
+	 */
+	public double getTop() {
+		return this.top;
+	}
+
+	/**
+	 * Returns the width and height of a cell.
+	 * @return the size of a cell
+	 */
+	public double getCellSize() {
+		return this.cell;
+	}
+
+	/**
+	 * Returns the number of columns of cells.
+	 * @return the number of columns
+	 */
+	public int getColumns() {
+		return this.columns;
+	}
+
+	/**
+	 * Returns the number of rows of cells.
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * Returns where the lines of a cell start in the index.
+	 * @param column -- the column of the cell
+	 * @param row -- the row of the cell
+	 * @return the position of the cell's first line in the index
+	 */
+	public int start(int column, int row) {
+		return this.offsets[row * this.columns + column];
+	}
+
+	/**
+	 * Returns where the lines of a cell end in the index.
+	 * @param column -- the column of the cell
+	 * @param row -- the row of the cell
+	 * @return the position after the cell's last line in the index
+	 */
+	public int end(int column, int row) {
+		return this.offsets[row * this.columns + column + 1];
+	}
+
+	/**
+	 * Returns a line in the index. The line goes from the point at the returned position of the
+	 * geometry's coordinates to the point right after it.
+	 * @param k -- the position in the index
+	 * @return the position of the line's first coordinate in the geometry
+	 */
+	public int get(int k) {
+		return this.indexes[k >>> CHUNK_BITS].get(k & CHUNK_MASK);
+	}
+
+	/**
+	 * Summarises every cell with more lines than a threshold into a bitmap of the pixels its lines cover,
+	 * so a renderer draws the cell in time that depends on its pixels instead of its lines.
+	 * The bitmap of a cell is one bit per pixel, row by row, set where a line of the cell passes through the pixel.
+	 * @param resolution -- the number of pixels across and down a cell
+	 * @param threshold -- the most lines a cell can have and still be drawn line by line
+	 */
+	public void summarise(int resolution, int threshold) {
+		this.resolution = resolution;
+		this.coverage = new long[this.columns * this.rows][];
+		double scale = resolution / this.cell;
+		for (int row = 0; row < this.rows; row++) {
+			for (int column = 0; column < this.columns; column++) {
+				if (end(column, row) - start(column, row) > threshold) {
+					long[] bits = new long[(resolution * resolution + 63) >>> 6];
+					double cellLeft = this.left + column * this.cell;
+					double cellTop = this.top + row * this.cell;
+					for (int k = start(column, row); k < end(column, row); k++) {
+						int i = get(k);
+						plot(bits, (this.segments.get(i) - cellLeft) * scale, (this.segments.get(i + 1) - cellTop) * scale,
+								(this.segments.get(i + 2) - cellLeft) * scale, (this.segments.get(i + 3) - cellTop) * scale);
+					}
+					this.coverage[row * this.columns + column] = bits;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of pixels across and down a cell in the bitmaps of summarise().
+	 * @return the resolution of the bitmaps, or 0 if the grid was not summarised
+	 */
+	public int getResolution() {
+		return this.resolution;
+	}
+
+	/**
+	 * Returns the bitmap of the pixels the lines of a cell cover.
+	 * @param column -- the column of the cell
+	 * @param row -- the row of the cell
+	 * @return one bit per pixel, row by row, or null if the cell is drawn line by line
+	 */
+	public long[] getCoverage(int column, int row) {
+		return this.coverage == null ? null : this.coverage[row * this.columns + column];
+	}
+
+	/**
+	 * Gives back the memory of the index right away. The lines that were indexed are not freed.
+	 * The grid must not be read afterwards.
+	 */
+	public void free() {
+		for (int c = 0; c < this.memory.length; c++) {
+			DirectMemory.free(this.memory[c]);
+			this.memory[c] = null;
+			this.indexes[c] = null;
+		}
+	}
+
+	/**
+	 * Sets the bits of the pixels of a cell a line passes through, stepping at most a pixel at a time
+	 * along the part of the line inside the cell.
+	 * @param bits -- the bitmap of the cell
+	 * @param x1 -- the x coordinate of the start of the line, in pixels from the top left of the cell
+	 * @param y1 -- the y coordinate of the start of the line, in pixels from the top left of the cell
+	 * @param x2 -- the x coordinate of the end of the line, in pixels from the top left of the cell
+	 * @param y2 -- the y coordinate of the end of the line, in pixels from the top left of the cell
+	 */
+	private void plot(long[] bits, double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double from = 0; // The part of the line inside the cell, as fractions of the line
+		double to = 1;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x1, this.resolution - x1, y1, this.resolution - y1 };
+		for (int e = 0; e < 4; e++) { // Clips the line against each edge of the cell
+			if (p[e] == 0) {
+				if (q[e] < 0) {
+					return;
+				}
+			} else if (p[e] < 0) {
+				from = Math.max(from, q[e] / p[e]);
+			} else {
+				to = Math.min(to, q[e] / p[e]);
+			}
+		}
+		if (from > to) {
+			return;
+		}
+		int steps = (int) Math.ceil((to - from) * Math.max(Math.abs(dx), Math.abs(dy)));
+		for (int s = 0; s <= steps; s++) {
+			double t = steps == 0 ? from : from + (to - from) * s / steps;
+			int x = Math.min(this.resolution - 1, (int) (x1 + t * dx));
+			int y = Math.min(this.resolution - 1, (int) (y1 + t * dy));
+			if (x >= 0 && y >= 0) {
+				int bit = y * this.resolution + x;
+				bits[bit >>> 6] |= 1L << bit;
+			}
+		}
+	}
+
+	/**
+	 * Finds the cells touched by the box around the line that starts at a point, if there is one.
+	 * @param coords -- the lines being indexed
+	 * @param i -- the position of the point in the coordinates
+	 * @param range -- set to the first column, first row, last column and last row touched
+	 * @return true if a line starts at the point and touches the grid, else false
+	 */
+	private boolean cells(Geometry coords, int i, int[] range) {
+		float x1 = coords.get(i);
+		float y1 = coords.get(i + 1);
+		float x2 = coords.get(i + 2);
+		float y2 = coords.get(i + 3);
+		if (Float.isNaN(x1) || Float.isNaN(x2)) { // A pen jump is next to the point, so no line is drawn
+			return false;
+		}
+		double minX = (Math.min(x1, x2) - this.left) / this.cell; // In cells from the top left of the grid
+		double minY = (Math.min(y1, y2) - this.top) / this.cell;
+		double maxX = (Math.max(x1, x2) - this.left) / this.cell;
+		double maxY = (Math.max(y1, y2) - this.top) / this.cell;
+		if (maxX < 0 || maxY < 0 || minX >= this.columns || minY >= this.rows) {
+			return false;
+		}
+		range[0] = Math.max(0, (int) minX);
+		range[1] = Math.max(0, (int) minY);
+		range[2] = Math.min(this.columns - 1, (int) maxX);
+		range[3] = Math.min(this.rows - 1, (int) maxY);
+		return true;
+	}
+
+}
@@ -0,0 +1,204 @@
+package graphics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+/**
+ * This class writes the line strokes of an L-system into an SVG document as the turtle draws them.
+ * Lines that continue where the last one ended become one polyline, and lines going the same way
+ * as the last one only move its end, so the document holds points where the turtle turns or jumps.
+ * Coordinates are rounded to a number of decimals, and only the current polyline is kept in memory.
+ * @author Benhur J. Tadiparti
+ */
+public class SvgWriter implements LineSink, AutoCloseable {
+
+	/** The most points written into one path element, so viewers do not have to parse huge attributes. */
+	private static final int PATH_POINTS = 1 << 14;
+
+	private Writer out;
+	private long scale;
+	private int decimals;
+	private boolean open;
+	private double dirX; // The way the current run of lines goes, zero before its first line
+	private double dirY;
+	private long endX; // Where the current run ends, not yet written
+	private long endY;
+	private int points;
+	private long count;
+
+	/**
+	 * Writes the header of the document.
+	 * @param out -- where the document is written
+	 * @param bounds -- the smallest x, smallest y, largest x and largest y of the drawing
+	 * @param decimals -- how many decimals the coordinates are rounded to
+	 * @param compress -- true to gzip the document (.svgz), else false
+	 * @throws IOException if the header cannot be written
+	 */
+	public SvgWriter(OutputStream out, double[] bounds, int decimals, boolean compress) throws IOException {
+		this.out = new BufferedWriter(new OutputStreamWriter(compress ? new GZIPOutputStream(out, 1 << 16) : out,
+				StandardCharsets.UTF_8), 1 << 16);
+		this.decimals = decimals;
+		this.scale = 1;
+		for (int i = 0; i < decimals; i++) {
+			this.scale *= 10;
+		}
+		this.open = false;
+		this.points = 0;
+		this.count = 0;
+		long left = round(bounds[0]);
+		long top = round(bounds[1]);
+		this.out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		this.out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"");
+		write(left);
+		this.out.write(' ');
+		write(top);
+		this.out.write(' ');
+		write(Math.max(round(bounds[2]) - left, 1));
+		this.out.write(' ');
+		write(Math.max(round(bounds[3]) - top, 1));
+		this.out.write("\">\n<g fill=\"none\" stroke=\"black\" stroke-width=\"1\" stroke-linejoin=\"round\">\n");
+	}
+
+	@Override
+	/**
+	 * Adds a line to the current polyline, or starts a new polyline if it does not continue the last line
+	 */
+	public void line(double x1, double y1, double x2, double y2) {
+		long fromX = round(x1);
+		long fromY = round(y1);
+		long toX = round(x2);
+		long toY = round(y2);
+		this.count++;
+		try {
+			if (!this.open || fromX != this.endX || fromY != this.endY) { // The pen jumps
+				if (this.open) {
+					point(this.endX, this.endY);
+				}
+				move(fromX, fromY);
+			} else if (!straight(x2 - x1, y2 - y1)) { // The turtle turns, so the end of the run is a corner
+				point(this.endX, this.endY);
+			}
+			this.dirX = x2 - x1;
+			this.dirY = y2 - y1;
+			this.endX = toX;
+			this.endY = toY;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns how many lines were written.
+	 * @return the number of lines received
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Writes the end of the last polyline and the end of the document, and closes the stream.
+	 * @throws IOException if the document cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.open) {
+			point(this.endX, this.endY);
+			this.out.write("\"/>\n");
+		}
+		this.out.write("</g>\n</svg>\n");
+		this.out.close();
+	}
+
+	/**
+	 * Checks if a line goes the same way as the current run. The unrounded coordinates are compared,
+	 * since rounding would make lines at most angles look like they turn slightly.
+	 * @param dx -- how far the line goes right
+	 * @param dy -- how far the line goes down
+	 * @return true if the line extends the run without turning, else false
+	 */
+	private boolean straight(double dx, double dy) {
+		double cross = this.dirX * dy - this.dirY * dx;
+		double dot = this.dirX * dx + this.dirY * dy;
+		return dot > 0 && Math.abs(cross) <= 1e-9 * dot;
+	}
+
+	/**
+	 * Starts a new polyline, and a new path element if the current one is full.
+	 * @param x -- the rounded x coordinate the polyline starts at
+	 * @param y -- the rounded y coordinate the polyline starts at
+	 * @throws IOException if the polyline cannot be written
+	 */
+	private void move(long x, long y) throws IOException {
+		if (this.points >= PATH_POINTS) {
+			this.out.write("\"/>\n");
+			this.open = false;
+		}
+		if (!this.open) {
+			this.out.write("<path d=\"");
+			this.points = 0;
+			this.open = true;
+		}
+		this.out.write('M');
+		write(x);
+		this.out.write(' ');
+		write(y);
+		this.dirX = 0;
+		this.dirY = 0;
+	}
+
+	/**
+	 * Writes a corner of the current polyline. Points after an M are lines, so no command is needed.
+	 * @param x -- the rounded x coordinate of the corner
+	 * @param y -- the rounded y coordinate of the corner
+	 * @throws IOException if the point cannot be written
+	 */
+	private void point(long x, long y) throws IOException {
+		this.out.write(' ');
+		write(x);
+		this.out.write(' ');
+		write(y);
+		this.points++;
+	}
+
+	/**
+	 * Rounds a coordinate to the number of decimals, kept as an integer number of that unit.
+	 * @param v -- the coordinate
+	 * @return the coordinate times 10^decimals, rounded
+	 */
+	private long round(double v) {
+		return Math.round(v * this.scale);
+	}
+
+	/**
+	 * Writes a rounded coordinate as a decimal number, without trailing zeros.
+	 * @param v -- the coordinate times 10^decimals
+	 * @throws IOException if the number cannot be written
+	 */
+	private void write(long v) throws IOException {
+		if (v < 0) {
+			this.out.write('-');
+			v = -v;
+		}
+		this.out.write(Long.toString(v / this.scale));
+		long fraction = v % this.scale;
+		if (fraction != 0) {
+			int digits = this.decimals;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				digits--;
+			}
+			String text = Long.toString(fraction);
+			this.out.write('.');
+			for (int i = text.length(); i < digits; i++) {
+				this.out.write('0');
+			}
+			this.out.write(text);
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+package graphics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import metrics.Metrics;
+/**
+ * This class draws the line strokes of an L-system into a PNG image without a display.
+ * The image is split into square tiles that are drawn at the same time on a thread pool,
+ * one row of tiles at a time. While a row is compressed and written, the next row is drawn,
+ * so only two rows of tiles are ever in memory, however large the image is.
+ * @author Benhur J. Tadiparti
+ */
+public class TileRasterizer {
+
+	/** The default width and height of a tile in pixels. */
+	public static final int DEFAULT_TILE = 256;
+
+	private static final byte WHITE = (byte) 255;
+	private static final byte BLACK = 0;
+
+	private ExecutorService pool;
+	private int tile;
+
+	/**
+	 * Initializes the fields required.
+	 * @param pool -- the threads that draw the tiles
+	 * @param tile -- the width and height of a tile in pixels
+	 */
+	public TileRasterizer(ExecutorService pool, int tile) {
+		this.pool = pool;
+		this.tile = tile;
+	}
+
+	/**
+	 * Draws lines into a PNG image with black lines on a white background.
+	 * The point (x, y) of the lines is drawn at pixel ((x - left) * scale, (y - top) * scale).
+	 * @param segments -- the line strokes being drawn
+	 * @param left -- the x coordinate drawn at the left edge of the image
+	 * @param top -- the y coordinate drawn at the top edge of the image
+	 * @param scale -- how many pixels one unit of the lines' coordinates takes up
+	 * @param width -- the width of the image in pixels
+	 * @param height -- the height of the image in pixels
+	 * @param out -- where the image is written
+	 * @throws IOException if the image cannot be written
+	 */
+	public void render(Geometry segments, double left, double top, double scale, int width, int height,
+			OutputStream out) throws IOException {
+		int columns = (width + this.tile - 1) / this.tile;
+		int rows = (height + this.tile - 1) / this.tile;
+		SegmentGrid grid = new SegmentGrid(segments, left, top, this.tile / scale, columns, rows); // One cell per tile
+		List<Future<byte[]>> strip = submit(grid, 0, left, top, scale);
+		try (PngWriter png = new PngWriter(out, width, height)) { // Ends the compressor even if a tile fails
+			for (int row = 0; row < rows; row++) {
+				List<Future<byte[]>> next = row + 1 < rows ? submit(grid, row + 1, left, top, scale) : null;
+				write(strip, Math.min(this.tile, height - row * this.tile), width, png);
+				strip = next;
+			}
+			grid.free(); // Every tile is drawn; if one failed, cancelled tiles may still read the index, so it is left to be collected
+		} finally {
+			if (strip != null) {
+				for (Future<byte[]> pixels : strip) { // Stops the row that was being drawn if writing failed
+					pixels.cancel(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts drawing every tile of a row of tiles on the pool.
+	 * What a tile allocates is added to the job of the calling thread, if one is being counted.
+	 * @param grid -- the lines indexed by tile
+	 * @param row -- the row of tiles
+	 * @param left -- the x coordinate drawn at the left edge of the image
+	 * @param top -- the y coordinate drawn at the top edge of the image
+	 * @param scale -- how many pixels one unit of the lines' coordinates takes up
+	 * @return the pixels of every tile in the row, from left to right
+	 */
+	private List<Future<byte[]>> submit(SegmentGrid grid, int row, double left, double top, double scale) {
+		List<Future<byte[]>> strip = new ArrayList<>();
+		LongAdder job = Metrics.job();
+		for (int column = 0; column < grid.getColumns(); column++) {
+			int c = column;
+			strip.add(this.pool.submit(() -> {
+				long allocated = job == null ? 0 : Metrics.allocatedBytes();
+				byte[] pixels = rasterize(grid, c, row, left, top, scale);
+				if (job != null) {
+					job.add(Metrics.allocatedBytes() - allocated);
+				}
+				return pixels;
+			}));
+		}
+		return strip;
+	}
+
+	/**
+	 * Waits for a row of tiles to be drawn and writes it into the image one row of pixels at a time.
+	 * @param strip -- the pixels of every tile in the row
+	 * @param height -- the number of rows of pixels in the row of tiles
+	 * @param width -- the width of the image in pixels
+	 * @param png -- the image being written
+	 * @throws IOException if the image cannot be written, or a tile could not be drawn
+	 */
+	private void write(List<Future<byte[]>> strip, int height, int width, PngWriter png) throws IOException {
+		byte[][] tiles = new byte[strip.size()][];
+		try {
+			for (int column = 0; column < tiles.length; column++) {
+				tiles[column] = strip.get(column).get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while drawing tiles");
+		} catch (ExecutionException e) {
+			throw new IOException("A tile could not be drawn", e.getCause());
+		}
+		byte[] line = new byte[width];
+		for (int y = 0; y < height; y++) {
+			for (int column = 0; column < tiles.length; column++) {
+				int x = column * this.tile;
+				System.arraycopy(tiles[column], y * this.tile, line, x, Math.min(this.tile, width - x));
+			}
+			png.writeRow(line, 0);
+		}
+	}
+
+	/**
+	 * Draws the lines of one tile.
+	 * @param grid -- the lines indexed by tile
+	 * @param column -- the column of the tile
+	 * @param row -- the row of the tile
+	 * @param left -- the x coordinate drawn at the left edge of the image
+	 * @param top -- the y coordinate drawn at the top edge of the image
+	 * @param scale -- how many pixels one unit of the lines' coordinates takes up
+	 * @return the gray value of every pixel of the tile, row by row
+	 */
+	private byte[] rasterize(SegmentGrid grid, int column, int row, double left, double top, double scale) {
+		byte[] pixels = new byte[this.tile * this.tile];
+		Arrays.fill(pixels, WHITE);
+		Geometry coords = grid.getSegments();
+		double x = left + column * this.tile / scale; // The coordinates drawn at the top left of the tile
+		double y = top + row * this.tile / scale;
+		for (int k = grid.start(column, row); k < grid.end(column, row); k++) {
+			int i = grid.get(k);
+			line(pixels, (coords.get(i) - x) * scale, (coords.get(i + 1) - y) * scale, 
+					(coords.get(i + 2) - x) * scale, (coords.get(i + 3) - y) * scale);
+		}
+		return pixels;
+	}
+
+	/**
+	 * Draws one line into a tile, leaving out the parts outside of the tile.
+	 * @param pixels -- the pixels of the tile
+	 * @param x0 -- the x coordinate where the line starts, in pixels from the tile's left edge
+	 * @param y0 -- the y coordinate where the line starts, in pixels from the tile's top edge
+	 * @param x1 -- the x coordinate where the line ends
+	 * @param y1 -- the y coordinate where the line ends
+	 */
+	private void line(byte[] pixels, double x0, double y0, double x1, double y1) {
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x0, this.tile - x0, y0, this.tile - y0 };
+		double t0 = 0;
+		double t1 = 1;
+		for (int side = 0; side < 4; side++) { // Cuts the line down to the part inside the tile
+			if (p[side] == 0) {
+				if (q[side] < 0) {
+					return;
+				}
+			} else if (p[side] < 0) {
+				t0 = Math.max(t0, q[side] / p[side]);
+			} else {
+				t1 = Math.min(t1, q[side] / p[side]);
+			}
+		}
+		if (t0 > t1) {
+			return;
+		}
+		int steps = Math.max(1, (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)) * (t1 - t0)));
+		for (int s = 0; s <= steps; s++) { // One pixel per step along the longer side of the line
+			double t = t0 + (t1 - t0) * s / steps;
+			int px = (int) Math.floor(x0 + dx * t);
+			int py = (int) Math.floor(y0 + dy * t);
+			if (px >= 0 && py >= 0 && px < this.tile && py < this.tile) {
+				pixels[py * this.tile + px] = BLACK;
+			}
+		}
+	}
+
+}
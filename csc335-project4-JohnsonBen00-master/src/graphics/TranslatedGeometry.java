@@ -0,0 +1,50 @@
+package graphics;
+/**
+ * This class reads the line strokes of another Geometry moved by an offset, without copying them.
+ * Moving an L-system to a new origin only changes the offset, so the lines computed by the turtle are reused as they are.
+ * Pen jumps stay NaN, since adding to NaN gives NaN.
+ * @author Benhur J. Tadiparti
+ */
+public class TranslatedGeometry implements Geometry {
+
+	private Geometry segments;
+	private float dx;
+	private float dy;
+
+	/**
+	 * Initializes the fields required.
+	 * @param segments -- the line strokes being moved
+	 * @param dx -- how far the lines are moved right
+	 * @param dy -- how far the lines are moved down
+	 */
+	public TranslatedGeometry(Geometry segments, double dx, double dy) {
+		this.segments = segments;
+		this.dx = (float) dx;
+		this.dy = (float) dy;
+	}
+
+	@Override
+	public int getCount() {
+		return this.segments.getCount();
+	}
+
+	@Override
+	public int getSize() {
+		return this.segments.getSize();
+	}
+
+	@Override
+	public float get(int i) {
+		return this.segments.get(i) + ((i & 1) == 0 ? this.dx : this.dy);
+	}
+
+	@Override
+	public double[] getBounds() {
+		double[] bounds = this.segments.getBounds();
+		if (getCount() == 0) {
+			return bounds;
+		}
+		return new double[] { bounds[0] + this.dx, bounds[1] + this.dy, bounds[2] + this.dx, bounds[3] + this.dy };
+	}
+
+}
@@ -1,39 +1,235 @@
 package graphics;
 
-import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
 
 import model.LindenmayerModel;
+import model.ParametricSequence;
+import model.SymbolCursor;
 /**
  * This class calcuates how the L-system will appear on a digital canvas.
+ * The turtle can only face multiples of the angle, so every heading it can reach and the
+ * step it takes in that heading are computed once, and turning only changes an index.
+ * Positions are kept in fixed point, so long paths add up exactly instead of drifting.
  * @author Benhur J. Tadiparti
  */
 public class TurtleGraphics {
 	
-	private Stack<ArrayList<Double>> stack;
-	private double x;
-	private double y;
+	/** How long each line stroke is. */
+	public static final double STEP = 15;
+	
+	/** The number of fractional bits in a fixed point coordinate. */
+	public static final int FRACTION_BITS = 32;
+	
+	/** The value of 1.0 in fixed point. */
+	private static final double ONE = 1L << FRACTION_BITS;
+	
+	/** The commands a symbol can give the turtle: nothing, draw a line, turn left or right, save or restore. */
+	public static final byte NONE = 0, DRAW = 1, LEFT = 2, RIGHT = 3, PUSH = 4, POP = 5;
+	
+	/** The command of every symbol up to ']', used when no table of commands is given. */
+	private static final byte[] COMMANDS = commands(']' + 1);
+	
+	private long[] stack;
+	private int top;
+	private int deepest;
+	private long x;
+	private long y;
 	private int angle;
-	private double rotations;
+	private int heading;
+	private long[] dx;
+	private long[] dy;
 	
 	/**
 	 * Initializes the field required to calculate the appearance of the L-system.
 	 * @param model -- the class that stores all of the users' inputs
 	 */
 	public TurtleGraphics(LindenmayerModel model) {
-		this.stack = new Stack<ArrayList<Double>>();
-		this.x = model.getX();
-		this.y = model.getY();
-		this.rotations = 0;
-		this.angle = model.getAngle();
+		this(model.getX(), model.getY(), model.getAngle());
+	}
+	
+	/**
+	 * Initializes the field required to calculate the appearance of the L-system.
+	 * @param x -- the x coordinate the turtle starts at
+	 * @param y -- the y coordinate the turtle starts at
+	 * @param angle -- the angle the turtle turns by
+	 */
+	public TurtleGraphics(double x, double y, int angle) {
+		this.stack = new long[3 * 16]; // Room for 16 saved states before it grows
+		this.top = 0;
+		this.deepest = 0;
+		this.x = toFixed(x);
+		this.y = toFixed(y);
+		this.angle = angle;
+		this.heading = 0;
+		int headings = headings(angle);
+		this.dx = new long[headings];
+		this.dy = new long[headings];
+		for (int h = 0; h < headings; h++) { // The step taken in every heading the turtle can face
+			double rotations = Math.toRadians((double) h * angle % 360);
+			this.dx[h] = toFixed(STEP * Math.sin(rotations));
+			this.dy[h] = toFixed(STEP * Math.cos(rotations));
+		}
+	}
+	
+	/**
+	 * Initializes a turtle that turns by the same angle and takes the same steps as another,
+	 * starting at its position and heading with nothing stored on the stack.
+	 * @param other -- the turtle whose steps are shared
+	 */
+	TurtleGraphics(TurtleGraphics other) {
+		this.stack = new long[3 * 16];
+		this.top = 0;
+		this.deepest = 0;
+		this.x = other.x;
+		this.y = other.y;
+		this.angle = other.angle;
+		this.heading = other.heading;
+		this.dx = other.dx;
+		this.dy = other.dy;
+	}
+	
+	/**
+	 * Reads the symbols of the L-system from left to right, and passes every line stroke to the sink.
+	 * @param symbols -- the symbols of the L-system
+	 * @param sink -- where the line strokes are sent
+	 */
+	public void draw(SymbolCursor symbols, LineSink sink) {
+		draw(symbols, COMMANDS, sink);
+	}
+	
+	/**
+	 * Reads the symbols of the L-system from left to right, looking up the command of each symbol
+	 * in a table, and passes every line stroke to the sink.
+	 * Nothing is allocated per symbol, so the cost of a symbol is the work the turtle does for it.
+	 * @param symbols -- the symbols of the L-system
+	 * @param commands -- the command of every symbol, indexed by symbol; symbols past its end give none
+	 * @param sink -- where the line strokes are sent
+	 */
+	public void draw(SymbolCursor symbols, byte[] commands, LineSink sink) {
+		while (symbols.hasNext()) {
+			char c = symbols.next();
+			apply(c < commands.length ? commands[c] : NONE, STEP, sink);
+		}
+	}
+	
+	/**
+	 * Reads the symbols of a parametric L-system from left to right, and passes every line stroke to the sink.
+	 * A line symbol with a parameter is drawn that long instead of STEP. The parameters of a turn are ignored,
+	 * so the turtle still turns by the angle and stays on the headings it can reach.
+	 * @param symbols -- the symbols of the L-system, with their parameters
+	 * @param commands -- the command of every symbol, indexed by symbol; symbols past its end give none
+	 * @param sink -- where the line strokes are sent
+	 */
+	public void draw(ParametricSequence symbols, byte[] commands, LineSink sink) {
+		draw(symbols, 0, symbols.length(), commands, sink);
+	}
+	
+	/**
+	 * Reads part of the symbols of a parametric L-system from left to right, and passes every line stroke to the sink,
+	 * so a caller can stop between parts.
+	 * @param symbols -- the symbols of the L-system, with their parameters
+	 * @param begin -- the position of the first symbol read
+	 * @param end -- the position after the last symbol read
+	 * @param commands -- the command of every symbol, indexed by symbol; symbols past its end give none
+	 * @param sink -- where the line strokes are sent
+	 */
+	public void draw(ParametricSequence symbols, int begin, int end, byte[] commands, LineSink sink) {
+		char[] chars = symbols.getSymbols();
+		int[] offsets = symbols.getOffsets();
+		double[] params = symbols.getParams();
+		for (int i = begin; i < end; i++) {
+			char c = chars[i];
+			apply(c < commands.length ? commands[c] : NONE, offsets[i + 1] > offsets[i] ? params[offsets[i]] : STEP, sink);
+		}
+	}
+	
+	/**
+	 * Carries out the command of one symbol.
+	 * @param command -- the command the symbol gives the turtle
+	 * @param length -- how long a line stroke is drawn, STEP unless the symbol has a parameter
+	 * @param sink -- where the line stroke is sent
+	 */
+	private void apply(byte command, double length, LineSink sink) {
+		switch (command) {
+		case DRAW:
+			double x = getX();
+			double y = getY();
+			if (length == STEP) { // Calculates the end x,y coordinates of the line stroke
+				move();
+			} else {
+				move(length);
+			}
+			sink.line(x, y, getX(), getY());
+			break;
+		case LEFT:
+			rotateLeft(); // Calculates how far left should the line turn
+			break;
+		case RIGHT:
+			rotateRight(); // Calculates how far right should the line turn
+			break;
+		case PUSH:
+			push(); // Stores x,y coordinates, and the turning angle
+			break;
+		case POP:
+			pop(); // Returns to the stored x,y coordinates, and turning angle
+			break;
+		default: // Other symbols do not move the turtle
+			break;
+		}
+	}
+	
+	/**
+	 * Returns the command a symbol gives the turtle.
+	 * @param c -- the symbol
+	 * @return DRAW for 'F' and 'G', LEFT for '-', RIGHT for '+', PUSH for '[', POP for ']', else NONE
+	 */
+	public static byte command(char c) {
+		switch (c) {
+		case 'F':
+		case 'G':
+			return DRAW;
+		case '-':
+			return LEFT;
+		case '+':
+			return RIGHT;
+		case '[':
+			return PUSH;
+		case ']':
+			return POP;
+		default:
+			return NONE;
+		}
+	}
+	
+	/**
+	 * Builds the table of commands for every symbol below a size.
+	 * @param size -- the number of symbols in the table
+	 * @return the command of every symbol, indexed by symbol
+	 */
+	public static byte[] commands(int size) {
+		byte[] commands = new byte[size];
+		for (int c = 0; c < size; c++) {
+			commands[c] = command((char) c);
+		}
+		return commands;
 	}
 	
 	/**
 	 * Calculates where the end of the line stroke is on the canvas.
 	 */
 	public void move() {
-		this.x += (15 * Math.sin(Math.toRadians(this.rotations)));
-		this.y += (15 * Math.cos(Math.toRadians(this.rotations)));
+		this.x += this.dx[this.heading];
+		this.y += this.dy[this.heading];
+	}
+	
+	/**
+	 * Calculates where the end of a line stroke of any length is on the canvas.
+	 * @param length -- how long the line stroke is
+	 */
+	public void move(double length) {
+		double scale = length / STEP;
+		this.x += Math.round(this.dx[this.heading] * scale);
+		this.y += Math.round(this.dy[this.heading] * scale);
 	}
 	
 	/**
@@ -41,14 +237,14 @@ public class TurtleGraphics {
 	 * 
 	 */
 	public void rotateLeft() {
-		this.rotations = (this.rotations + this.angle) % 360;
+		this.heading = this.heading + 1 == this.dx.length ? 0 : this.heading + 1;
 	}
 	
 	/**
 	 * Calculates how far right the line stroke should turn.
 	 */
 	public void rotateRight() {
-		this.rotations = (this.rotations - this.angle) % 360;
+		this.heading = this.heading == 0 ? this.dx.length - 1 : this.heading - 1;
 	}
 	
 	/**
@@ -56,7 +252,7 @@ public class TurtleGraphics {
 	 * @return the current x coordinate of the line
 	 */
 	public double getX() {
-		return this.x;
+		return this.x / ONE;
 	}
 	
 	/**
@@ -64,31 +260,164 @@ public class TurtleGraphics {
 	 * @return the current y coordinate of the line
 	 */
 	public double getY() {
-		return this.y;
+		return this.y / ONE;
 	}
 	
 	/**
 	 * Returns how far left/right should the L-system to turn.
-	 * @return how far left/right should the line turn
+	 * @return how far left/right should the line turn, in degrees between 0 and 360
 	 */
 	public double getRotations() {
-		return this.rotations;
+		return Math.floorMod(this.heading * this.angle, 360);
+	}
+	
+	/**
+	 * Returns how many states are stored on the stack.
+	 * @return the number of '[' that have not been closed yet
+	 */
+	public int getDepth() {
+		return this.top / 3;
+	}
+	
+	/**
+	 * Returns the most states that were stored on the stack at once.
+	 * @return the deepest nesting of '[' the turtle has read
+	 */
+	public int getMaxDepth() {
+		return this.deepest / 3;
 	}
 	
 	/**
-	 * Removes the top element pushed onto the stack.
+	 * Stores the current x, y coordinates and turning angle on the stack.
+	 * The stack doubles in size whenever it is full.
+	 */
+	public void push() {
+		if (this.top + 3 > this.stack.length) {
+			this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+		}
+		this.stack[this.top++] = this.x;
+		this.stack[this.top++] = this.y;
+		this.stack[this.top++] = this.heading;
+		if (this.top > this.deepest) {
+			this.deepest = this.top;
+		}
+	}
+	
+	/**
+	 * Returns to the x, y coordinates and turning angle stored last, and removes them from the stack.
+	 * Does nothing if the stack is empty.
 	 */
 	public void pop() {
-		this.stack.pop();
+		if (this.top == 0) {
+			return;
+		}
+		this.heading = (int) this.stack[--this.top];
+		this.y = this.stack[--this.top];
+		this.x = this.stack[--this.top];
+	}
+	
+	/**
+	 * Returns the current x coordinate in fixed point.
+	 * @return the x coordinate, in units of 2^-FRACTION_BITS
+	 */
+	long getFixedX() {
+		return this.x;
+	}
+	
+	/**
+	 * Returns the current y coordinate in fixed point.
+	 * @return the y coordinate, in units of 2^-FRACTION_BITS
+	 */
+	long getFixedY() {
+		return this.y;
+	}
+	
+	/**
+	 * Returns the index of the heading the turtle faces.
+	 * @return the number of left turns from the start, between 0 and getHeadings() - 1
+	 */
+	int getHeading() {
+		return this.heading;
+	}
+	
+	/**
+	 * Returns how many different headings the turtle can face.
+	 * @return the number of headings
+	 */
+	int getHeadings() {
+		return this.dx.length;
+	}
+	
+	/**
+	 * Returns how far right a line stroke in a heading goes, in fixed point.
+	 * @param heading -- the index of the heading
+	 * @return the x part of the step
+	 */
+	long getStepX(int heading) {
+		return this.dx[heading];
+	}
+	
+	/**
+	 * Returns how far down a line stroke in a heading goes, in fixed point.
+	 * @param heading -- the index of the heading
+	 * @return the y part of the step
+	 */
+	long getStepY(int heading) {
+		return this.dy[heading];
+	}
+	
+	/**
+	 * Returns a copy of the states stored on the stack.
+	 * @return the stored states as x, y and heading, oldest first
+	 */
+	long[] getFrames() {
+		return Arrays.copyOf(this.stack, this.top);
+	}
+	
+	/**
+	 * Moves the turtle to a state computed elsewhere, replacing its stack.
+	 * @param x -- the x coordinate in fixed point
+	 * @param y -- the y coordinate in fixed point
+	 * @param heading -- the index of the heading
+	 * @param frames -- the stored states as x, y and heading, oldest first
+	 * @param depth -- the number of states stored in frames
+	 * @param deepest -- the most states that were stored at once
+	 */
+	void restore(long x, long y, int heading, long[] frames, int depth, int deepest) {
+		if (3 * depth > this.stack.length) {
+			this.stack = Arrays.copyOf(this.stack, Math.max(3 * depth, this.stack.length * 2));
+		}
+		System.arraycopy(frames, 0, this.stack, 0, 3 * depth);
+		this.top = 3 * depth;
+		this.deepest = 3 * Math.max(depth, deepest);
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+	}
+	
+	/**
+	 * Returns how many different headings a turtle turning by an angle can face.
+	 * @param angle -- the angle the turtle turns by
+	 * @return the number of multiples of the angle between 0 and 360
+	 */
+	public static int headings(int angle) {
+		int a = Math.floorMod(angle, 360);
+		int b = 360;
+		while (a != 0) { // Greatest common divisor of the angle and 360
+			int r = b % a;
+			b = a;
+			a = r;
+		}
+		return 360 / b;
 	}
 	
 	/**
-	 * Stores an ArrayList in the stack.
-	 * @param list -- the ArrayList that stores the x, y coordinates of the
-	 *                current line in the L-system, and direction of the line
+	 * Converts a coordinate to fixed point.
+	 * @param value -- the coordinate
+	 * @return the coordinate in fixed point
 	 */
-	public void push(ArrayList<Double> list) {
-		this.stack.push(list);
+	private static long toFixed(double value) {
+		return Math.round(value * ONE);
 	}
 	
 }
\ No newline at end of file
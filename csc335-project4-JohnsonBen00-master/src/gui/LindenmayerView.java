@@ -1,30 +1,58 @@
 package gui;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Observable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import model.LindenmayerModel;
+import model.Production;
+import model.SymbolSequence;
+import controller.Admission;
 import controller.LindenmayerController;
+import controller.LindenmayerFile;
+import controller.ParametricRule;
+import controller.ProductionTable;
+import graphics.Geometry;
+import graphics.SegmentGrid;
+import graphics.TranslatedGeometry;
 import graphics.TurtleGraphics;
+import metrics.Metrics;
+import metrics.StageTimer;
 
 /**
  * This class acts as the view, and displays the L-system pattern on a different window.
@@ -32,11 +60,41 @@ import graphics.TurtleGraphics;
  */
 public class LindenmayerView extends javafx.application.Application implements java.util.Observer {
 	
+	/** How long the inputs must stay unchanged before the L-system is recomputed. */
+	private static final double DEBOUNCE_MILLIS = 40;
+	
+	/** The most points added to a path before it is stroked. */
+	private static final int PATH_POINTS = 1 << 14;
+	
+	/** The width and height of the area the L-system is drawn in. */
+	private static final int SIZE = 5000;
+	
+	/** The width and height of a tile of the drawing area. */
+	private static final int TILE = 512;
+	
+	/** The number of tiles across and down the drawing area. */
+	private static final int TILES = (SIZE + TILE - 1) / TILE;
+	
+	/** How far apart, in pixels, two points of a polyline must be for both to be drawn. */
+	private static final double DETAIL = 1;
+	
 	private LindenmayerModel model;
 	private LindenmayerController control;
-	private TurtleGraphics graphics;
 	private Rectangle2D screen;
-	private GraphicsContext cs;
+	private Pane content;
+	private ScrollPane scroll;
+	private HashMap<Integer, Canvas> tiles;
+	private SegmentGrid grid;
+	private RenderStages stages;
+	private int pending;
+	private int originX;
+	private int originY;
+	private ExecutorService worker;
+	private RenderTask task;
+	private PauseTransition debounce;
+	private Label overlay;
+	private Label cost;
+	private Admission admission;
 	
 	/**
 	 * Starts the program.
@@ -55,6 +113,14 @@ public class LindenmayerView extends javafx.application.Application implements j
 		this.model = new LindenmayerModel(); // Model
 		this.model.addObserver(this); // Connects to the model, letting the view know that any changes were made to the user inputs
 		this.control = new LindenmayerController(this.model); // Controller
+		this.stages = new RenderStages(); // What the last render computed, kept until the fields it depends on change
+		this.worker = Executors.newSingleThreadExecutor((job) -> { // Computes the L-system away from the JavaFX Application Thread
+			Thread thread = new Thread(job, "L-system render");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.debounce = new PauseTransition(Duration.millis(DEBOUNCE_MILLIS)); // Rapid changes are collapsed into one render
+		this.debounce.setOnFinished((event) -> render());
 		this.screen = Screen.getPrimary().getVisualBounds(); // Screen bounds
 		
 		stage.setTitle("Lindenmayer System Visualizer"); // Title
@@ -141,6 +207,11 @@ public class LindenmayerView extends javafx.application.Application implements j
 		
 		vbox.getChildren().add(sbox);
 		
+		this.cost = new Label(); // Predicted size of the L-system, shown before it is computed, or why it could not be drawn
+		this.cost.setWrapText(true);
+		
+		vbox.getChildren().add(this.cost);
+		
 		HBox abox = new HBox(); // Angle HBox
 		  
 		Label angle = new Label("Angle"); // Angle label
@@ -178,8 +249,8 @@ public class LindenmayerView extends javafx.application.Application implements j
 		TextField tAX = new TextField(); // Axiom TextField
 		tAX.setAlignment(Pos.CENTER);
 		tAX.setOnAction((event) -> { // If value is entered, the model stores said value in the appropriate field if and only if the value is valid
-			if (tAX.getText().length() == 1) {
-        		model.setAxiom(tAX.getText().charAt(0));
+			if (!tAX.getText().isEmpty()) {
+        		model.setAxiom(tAX.getText());
         	} else {
         		event.consume();
         	}
@@ -198,161 +269,551 @@ public class LindenmayerView extends javafx.application.Application implements j
 		
 		vbox.getChildren().add(mbox);
 		
-		HBox mbox1 = new HBox(); // Mapping HBox 1
+		VBox rules = new VBox(); // One row per rule, any symbol can be mapped
+		addRule(rules);
+		addRule(rules);
 		
-		TextField map1 = new TextField(); // M1 TextField
-		map1.setPrefWidth(screen.getWidth() * .03);
+		vbox.getChildren().add(rules);
 		
-		TextField map1f = new TextField(); // M1f TextField
-		map1f.setPrefWidth(this.screen.getWidth() * .05);
+		HBox rbox = new HBox(); // Add rule HBox
 		
-		map1.setOnAction((event) -> { // If value is entered, the model stores said value in the appropriate field if and only if the value is valid
-			if (!map1.getText().isEmpty() && !map1f.getText().isEmpty()) {
-        		if (map1.getText().length() == 1 && (map1.getText().charAt(0) == 'F' || map1.getText().charAt(0) == 'G')) {
-            		model.setMap(map1.getText().charAt(0), map1f.getText());
-            	} else {
-            		event.consume();
-            	}
-        	}
-		});
+		Button more = new Button("Add rule"); // Adds a row for another rule
+		more.setOnAction((event) -> addRule(rules));
 		
-		mbox1.getChildren().add(map1);
+		rbox.getChildren().add(more);
+		rbox.setAlignment(Pos.CENTER);
 		
-		Label arrow = new Label("->"); // Arrow label
-		arrow.setFont(new Font(20));
-		arrow.setAlignment(Pos.CENTER);
+		vbox.getChildren().add(rbox);
 		
-		mbox1.getChildren().add(arrow);
+		HBox sdbox = new HBox(); // Seed HBox
 		
-		map1f.setOnAction((event) -> { // If value is entered, the model stores said value in the appropriate field if and only if the value is valid
-			if (!map1.getText().isEmpty() && !map1f.getText().isEmpty()) {
-				if (map1.getText().length() == 1 && (map1.getText().charAt(0) == 'F' || map1.getText().charAt(0) == 'G')) {
-            		model.setMap(map1.getText().charAt(0), map1f.getText());
-            	} else {
-            		event.consume();
-            	}
-        	}
+		Label seed = new Label("Seed"); // Seed label
+		seed.setFont(new Font(20));
+		seed.setAlignment(Pos.CENTER);
+		
+		TextField tS = new TextField("0"); // Seed TextField, picks which rules are chosen by chance
+		tS.setPrefWidth(this.screen.getWidth() * .05);
+		tS.setOnAction((event) -> { // If value is entered, the model stores said value in the appropriate field if and only if the value is valid
+			try {
+				model.setSeed(Long.parseLong(tS.getText()));
+			} catch (NumberFormatException e) {
+				event.consume();
+			}
 		});
 		
-		mbox1.getChildren().add(map1f);
-		mbox1.setAlignment(Pos.CENTER);
+		sdbox.getChildren().addAll(seed, tS);
+		sdbox.setAlignment(Pos.CENTER);
 		
-		vbox.getChildren().add(mbox1);
+		vbox.getChildren().add(sdbox);
 		
-		HBox mbox2 = new HBox(); // Mapping HBox 2
+		HBox fbox = new HBox(); // File HBox
 		
-		TextField map2 = new TextField(); // M2 TextField
-		map2.setPrefWidth(this.screen.getWidth() * .03);
+		FileChooser chooser = new FileChooser(); // Chooses where L-systems are saved and opened
+		chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("L-system", "*.lsys"));
 		
-		TextField map2f = new TextField(); // M2f TextField
-		map2f.setPrefWidth(this.screen.getWidth() * .05);
+		Button save = new Button("Save"); // Saves the inputs and the line strokes being shown
+		save.setOnAction((event) -> {
+			File file = chooser.showSaveDialog(stage);
+			if (file != null && this.grid != null) {
+				save(file);
+			}
+		});
 		
-		map2.setOnAction((event) -> { // If value is entered, the model stores said value in the appropriate field if and only if the value is valid
-			if (!map2.getText().isEmpty() && !map2f.getText().isEmpty()) {
-				if (map2.getText().length() == 1 && (map2.getText().charAt(0) == 'F' || map2.getText().charAt(0) == 'G')) {
-            		model.setMap(map2.getText().charAt(0), map2f.getText());
-            	} else {
-            		event.consume();
-            	}
-        	}
+		Button open = new Button("Open"); // Opens a saved L-system without computing it again
+		open.setOnAction((event) -> {
+			File file = chooser.showOpenDialog(stage);
+			if (file != null) {
+				open(file);
+			}
 		});
 		
-		mbox2.getChildren().add(map2);
+		fbox.getChildren().addAll(save, open);
+		fbox.setAlignment(Pos.CENTER);
 		
-		Label arrow2 = new Label("->"); // Arrow label
-		arrow2.setFont(new Font(20));
-		arrow2.setAlignment(Pos.CENTER);
+		vbox.getChildren().add(fbox);
 		
-		mbox2.getChildren().add(arrow2);
+		this.overlay = new Label(); // Timings of the last render, shown over the drawing area
+		this.overlay.setFont(Font.font("Monospaced", 14));
+		this.overlay.setStyle("-fx-background-color: rgba(255, 255, 255, 0.8); -fx-padding: 4");
+		this.overlay.setMouseTransparent(true);
+		this.overlay.setVisible(Metrics.isEnabled());
 		
-		map2f.setOnAction((event) -> { // If value is entered, the model stores said value in the appropriate field if and only if the value is valid
-			if (!map2.getText().isEmpty() && !map2f.getText().isEmpty()) {
-				if (map2.getText().length() == 1 && (map2.getText().charAt(0) == 'F' || map2.getText().charAt(0) == 'G')) {
-            		model.setMap(map2.getText().charAt(0), map2f.getText());
-            	} else {
-            		event.consume();
-            	}
-        	}
+		CheckBox metrics = new CheckBox("Metrics"); // Records every stage of a render, and shows the overlay
+		metrics.setSelected(Metrics.isEnabled());
+		metrics.setOnAction((event) -> {
+			Metrics.setEnabled(metrics.isSelected());
+			this.overlay.setVisible(metrics.isSelected());
 		});
 		
-		mbox2.getChildren().add(map2f);
-		mbox2.setAlignment(Pos.CENTER);
+		HBox obox = new HBox(metrics); // Metrics HBox
+		obox.setAlignment(Pos.CENTER);
 		
-		vbox.getChildren().add(mbox2);
+		vbox.getChildren().add(obox);
 		
 		vbox.setPrefWidth(this.screen.getWidth() * .1);
 		vbox.setPrefHeight(this.screen.getHeight() * .1);
 		
 		window.setLeft(vbox);
 		
-		Canvas canvas = new Canvas(5000, 5000); // Canvas
+		this.content = new Pane(); // Drawing area, only the tiles that can be seen have a canvas
+		this.content.setMinSize(SIZE, SIZE);
+		this.content.setPrefSize(SIZE, SIZE);
+		this.content.setMaxSize(SIZE, SIZE);
+		this.content.setStyle("-fx-background-color: white"); // White canvas background
+		this.tiles = new HashMap<>();
 		
 		// If cursor is clicked anywhere on the canvas, the model stores the x and y coordinate 
         //of where the cursor was clicked, and said coordinates are displayed in their 
         //appropriate TextFields
-		canvas.setOnMouseClicked((event) -> { 
+		this.content.setOnMouseClicked((event) -> { 
 			tX.setText(Integer.toString((int)event.getX()));
 			tY.setText(Integer.toString((int)event.getY()));
-			model.setX(Integer.parseInt(tX.getText()));
-			model.setY(Integer.parseInt(tY.getText()));
+			model.setOrigin(Integer.parseInt(tX.getText()), Integer.parseInt(tY.getText())); // One change, so one recompute
 		});
 		
-		this.cs = canvas.getGraphicsContext2D();
-		this.cs.setFill(Color.WHITE);
-		this.cs.fillRect(0, 0, 5000, 5000);
+		this.scroll = new ScrollPane(this.content);
 		
-		StackPane stack_pane = new StackPane(canvas);
-		stack_pane.setStyle("-fx-background-color: white"); // White canvas background
+		// If the window is scrolled or resized, only the tiles that came into view are drawn
+		this.scroll.hvalueProperty().addListener((observable, oldValue, newValue) -> showTiles());
+		this.scroll.vvalueProperty().addListener((observable, oldValue, newValue) -> showTiles());
+		this.scroll.viewportBoundsProperty().addListener((observable, oldValue, newValue) -> showTiles());
 		
-		ScrollPane scroll_pane = new ScrollPane(stack_pane);
-		
-		window.setCenter(scroll_pane);
+		StackPane center = new StackPane(this.scroll, this.overlay);
+		StackPane.setAlignment(this.overlay, Pos.TOP_LEFT);
+		window.setCenter(center);
 		
 		stage.setScene(scene);
 
 		stage.show();
 	}
 	
+	/**
+	 * Adds a row where the user can enter one rule of the L-system "mapping".
+	 * A single symbol is always replaced; a symbol written with a context or a weight, as in A<F>B:0.5,
+	 * is one of the rules chosen by chance or by the symbols around it, and a rule with parameters,
+	 * as in F(l) : l>1 -> F(l*0.7)[+F(l*0.5)], makes the L-system parametric.
+	 * Changing the symbol of a row moves its rule to the new symbol, and clearing its replacement removes the rule.
+	 * @param rules -- the rows of rules
+	 */
+	private void addRule(VBox rules) {
+		HBox mbox = new HBox(); // Mapping HBox
+		
+		TextField key = new TextField(); // Symbol TextField
+		key.setPrefWidth(this.screen.getWidth() * .03);
+		
+		TextField value = new TextField(); // Replacement TextField
+		value.setPrefWidth(this.screen.getWidth() * .05);
+		
+		Object[] stored = new Object[1]; // The symbol or rule this row last stored
+		EventHandler<ActionEvent> store = (event) -> { // If value is entered, the model stores said value in the appropriate field if and only if the value is valid
+			Production rule = null;
+			String parametric = null;
+			try {
+				if (key.getText().contains("(") || value.getText().contains("(")) {
+					parametric = key.getText() + " -> " + value.getText();
+					if (ProductionTable.isConstant(new ParametricRule(parametric).getSymbol())) {
+						event.consume();
+						return;
+					}
+				} else {
+					rule = Production.parse(key.getText(), value.getText());
+				}
+			} catch (IllegalArgumentException e) {
+				event.consume();
+				return;
+			}
+			if (rule != null && ProductionTable.isConstant(rule.getSymbol())) {
+				event.consume();
+				return;
+			}
+			this.model.beginUpdate(); // Replacing the row's rule is one change
+			if (stored[0] instanceof Character) {
+				this.model.removeMap((Character) stored[0]);
+			} else if (stored[0] instanceof Production) {
+				this.model.removeProduction((Production) stored[0]);
+			} else if (stored[0] instanceof String) {
+				this.model.removeParametricRule((String) stored[0]);
+			}
+			stored[0] = null;
+			if (parametric != null) {
+				this.model.addParametricRule(parametric);
+				stored[0] = parametric;
+			} else if (!value.getText().isEmpty() && key.getText().length() == 1) {
+				this.model.setMap(rule.getSymbol(), value.getText());
+				stored[0] = rule.getSymbol();
+			} else if (!value.getText().isEmpty()) {
+				this.model.addProduction(rule);
+				stored[0] = rule;
+			}
+			this.model.commit();
+		};
+		key.setOnAction(store);
+		value.setOnAction(store);
+		
+		Label arrow = new Label("->"); // Arrow label
+		arrow.setFont(new Font(20));
+		arrow.setAlignment(Pos.CENTER);
+		
+		mbox.getChildren().addAll(key, arrow, value);
+		mbox.setAlignment(Pos.CENTER);
+		
+		rules.getChildren().add(mbox);
+	}
+	
+	@Override
+	/**
+	 * Stops the thread that computes the L-system when the window is closed
+	 */
+	public void stop() {
+		this.worker.shutdownNow();
+	}
+	
 	@Override
 	/**
-	 * Calls the controller to compute the L-system pattern, and draws said pattern onto the canvas
+	 * Moves the L-system pattern right away if its origin changed, since its line strokes are kept relative to the origin.
+	 * If any other field changed, shows the predicted size of the L-system right away, then waits for the user
+	 * to stop changing the inputs and renders the L-system pattern once
 	 */
 	public void update(Observable o, Object arg) {
-		this.control.getFinalString(Character.toString(model.getAxiom()), 0);
-		this.cs.clearRect(0, 0, 5000, 5000); // Clears previous image on the canvas
-		this.graphics = new TurtleGraphics(this.model); // Turtle Graphics
-		draw();
+		int fields = arg instanceof Integer ? (Integer) arg : ~0;
+		if ((fields & LindenmayerModel.ORIGIN) != 0) {
+			moveOrigin();
+		}
+		if ((fields & ~LindenmayerModel.ORIGIN) == 0) { // Neither the final string nor the line strokes changed
+			return;
+		}
+		this.pending |= fields;
+		predict();
+		this.debounce.playFromStart(); // Restarts the wait if the inputs changed again
+	}
+	
+	/**
+	 * Moves the L-system pattern being shown to the origin in the model, redrawing the tiles that can be seen.
+	 * The line strokes are only translated, so nothing is computed or indexed again.
+	 */
+	private void moveOrigin() {
+		this.originX = this.model.getX();
+		this.originY = this.model.getY();
+		if (this.grid != null) {
+			this.content.getChildren().clear();
+			this.tiles.clear();
+			showTiles();
+		}
+	}
+	
+	/**
+	 * Predicts the size of the L-system from its growth matrix and shows it, along with whether
+	 * the L-system will be drawn as asked, streamed, clamped to fewer iterations or not drawn at all.
+	 * Parametric L-systems grow by their conditions, so they are not predicted.
+	 */
+	private void predict() {
+		if (!this.model.getParametricRules().isEmpty()) {
+			this.admission = null;
+			this.cost.setText("Parametric, size not predicted");
+			return;
+		}
+		this.admission = this.control.admit(this.control.getTable(), this.model.getAxiom(), this.model.getIterations());
+		this.cost.setText(this.admission.toString());
 	}
 	
 	/**
-	 * Draws the patterns onto the canvas
+	 * Starts computing the L-system pattern on the render thread, and draws said pattern onto the canvas once it is done.
+	 * The pattern that is still being computed for the previous inputs is cancelled.
+	 * An L-system over the budget is drawn at the iterations it was clamped to, or not at all if it was rejected.
+	 * Only the stages that depend on the fields changed since the last render are computed again:
+	 * if only the angle changed, the final string of the last render is drawn again.
 	 */
-	public void draw() {
-		ArrayList<Character> list = model.getResult(); // L-system pattern
-		double x = 0;
-		double y = 0;
-		this.cs.setStroke(Color.BLACK);
-        this.cs.setLineWidth(1);
-		for (int i = 0; i < list.size(); i++) {
-			if (list.get(i) == 'F' || list.get(i) == 'G') {
-				x = this.graphics.getX();
-				y = this.graphics.getY();
-				this.graphics.move(); // Calculates the end x,y coordinates of the line stroke
-				this.cs.strokeLine(x, y, this.graphics.getX(), this.graphics.getY());
-			} else if (list.get(i) == '-') {
-				this.graphics.rotateLeft(); // Calculates how far left should the line turn
-			} else if (list.get(i) == '+') {
-				this.graphics.rotateRight(); // Calculates how far right should the line turn
-			} else if (list.get(i) == '[') {
-				ArrayList<Double> list2 = new ArrayList<Double>();
-				list2.add(x);
-				list2.add(y);
-				list2.add(this.graphics.getRotations());
-				this.graphics.push(list2); // Stores x,y coordinates, and the turning angle
-			} else if (list.get(i) == ']') {
-				this.graphics.pop();
+	public void render() {
+		this.stages.invalidate(this.pending);
+		this.pending = 0;
+		int iterations = this.model.getIterations();
+		if (this.admission != null) {
+			if (!this.admission.isAdmitted()) {
+				return;
+			}
+			iterations = this.admission.getIterations();
+		}
+		RenderTask next;
+		try {
+			next = new RenderTask(this.control, this.model.getAxiom(), iterations, this.stages,
+					new TurtleGraphics(0, 0, this.model.getAngle()), SIZE, TILE); // Relative to the origin
+		} catch (IllegalArgumentException e) { // The parameters of the axiom cannot be read yet
+			return;
+		}
+		LindenmayerModel inputs = this.model.copy();
+		inputs.setIterations(iterations);
+		start(next, inputs);
+	}
+	
+	/**
+	 * Writes the inputs and the line strokes being shown into a file, on the render thread.
+	 * The file holds the line strokes where they are drawn, moved from the origin to the origin they were drawn at,
+	 * or the final string they were drawn from if it was kept and takes fewer bytes.
+	 * The inputs written are the copy the shown render was started with, not the model, which the user may
+	 * have changed since and keeps changing on this thread while the file is written.
+	 * A file that cannot be written is reported in the cost label.
+	 * @param file -- the file being written
+	 */
+	private void save(File file) {
+		LindenmayerModel inputs = this.stages.getInputs();
+		if (this.grid == null || inputs == null) {
+			return;
+		}
+		Geometry shown = new TranslatedGeometry(this.grid.getSegments(), inputs.getX(), inputs.getY());
+		SymbolSequence symbols = this.stages.getGeometry() == this.grid ? this.stages.getSymbols() : null; // Only if it is what is shown
+		this.worker.execute(() -> {
+			try {
+				if (symbols != null && LindenmayerFile.isSmallerAsSymbols(inputs, symbols.length(), shown)) {
+					LindenmayerFile.writeSymbols(file, inputs, symbols.cursor(), symbols.length());
+				} else {
+					LindenmayerFile.writeSegments(file, inputs, shown);
+				}
+			} catch (IOException | RuntimeException e) {
+				Platform.runLater(() -> this.cost.setText("Could not save " + file.getName() + ": " + e.getMessage()));
+			}
+		});
+	}
+	
+	/**
+	 * Opens a saved L-system, copying its inputs into the model and drawing it from the file.
+	 * The file is mapped into memory, so its line strokes are drawn without computing or copying them;
+	 * they are only moved back by the origin they were saved at.
+	 * A file that cannot be read is reported in the cost label, and the model is left as it was.
+	 * @param file -- the file being opened
+	 */
+	private void open(File file) {
+		try {
+			LindenmayerFile saved = LindenmayerFile.open(file);
+			saved.load(this.model);
+			this.debounce.stop(); // The loaded inputs are drawn from the file, not computed
+			this.pending = 0;
+			this.stages.clear();
+			start(new RenderTask(saved, this.model.getX(), this.model.getY(), 
+					new TurtleGraphics(0, 0, this.model.getAngle()), SIZE, TILE), this.model.copy());
+		} catch (IOException | RuntimeException e) {
+			this.cost.setText("Could not open " + file.getName() + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Runs a render on the render thread, cancelling the one before it, and draws its pattern once it is done.
+	 * @param next -- the render being started
+	 * @param inputs -- a copy of the inputs the render draws, kept with its pattern for saving it
+	 */
+	private void start(RenderTask next, LindenmayerModel inputs) {
+		if (this.task != null) {
+			this.task.cancel(); // The previous inputs are out of date, so stop computing them
+		}
+		next.setOnSucceeded((event) -> { // Runs on the JavaFX Application Thread
+			if (next == this.task) { // Kept for the next render, which drops what the changes since make out of date
+				this.stages.setSymbols(next.getSymbols());
+				this.stages.setSequence(next.getSequence());
+				this.stages.setGeometry(next.getValue());
+				if (next.getSequence() != null && next.getIterations() < inputs.getIterations()) { // A parametric L-system grew past its limit
+					inputs.setIterations(next.getIterations());
+					this.cost.setText("Clamped to " + next.getIterations() + " iterations");
+				}
+				this.stages.setInputs(inputs);
+				draw(next.getValue());
+			} else { // Out of date before it was shown
+				next.getValue().free();
+				next.getValue().getSegments().free();
+			}
+		});
+		next.setOnFailed((event) -> { // The last picture stays, and the cost label says why it was not replaced
+			if (next == this.task) {
+				Throwable e = next.getException();
+				this.cost.setText("Could not draw: " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+			}
+		});
+		this.task = next;
+		this.worker.execute(next);
+	}
+	
+	/**
+	 * Replaces the pattern on the canvas, redrawing the tiles that can be seen.
+	 * The line strokes of the pattern it replaces are freed on the render thread, after any save that is still reading them.
+	 * @param grid -- the line strokes of the L-system pattern, indexed by tile
+	 */
+	public void draw(SegmentGrid grid) {
+		StageTimer timer = Metrics.start(Metrics.DRAW);
+		SegmentGrid replaced = this.grid;
+		if (replaced != null && replaced != grid) {
+			this.worker.execute(() -> {
+				replaced.free();
+				replaced.getSegments().free();
+			});
+		}
+		this.grid = grid;
+		this.content.getChildren().clear(); // Clears previous image on the canvas
+		this.tiles.clear();
+		showTiles();
+		Metrics.stop(timer, -1, grid.getSegments().getCount(), 0);
+		if (this.overlay.isVisible()) {
+			this.overlay.setText(Metrics.summary());
+		}
+	}
+	
+	/**
+	 * Draws the tiles that came into view and drops the canvases of the tiles that left it.
+	 */
+	private void showTiles() {
+		if (this.grid == null) {
+			return;
+		}
+		Bounds view = this.scroll.getViewportBounds();
+		double left = this.scroll.getHvalue() * Math.max(0, SIZE - view.getWidth()); // The part of the drawing area in view
+		double top = this.scroll.getVvalue() * Math.max(0, SIZE - view.getHeight());
+		int firstColumn = Math.max(0, (int) (left / TILE));
+		int firstRow = Math.max(0, (int) (top / TILE));
+		int lastColumn = Math.min(TILES - 1, (int) ((left + view.getWidth()) / TILE));
+		int lastRow = Math.min(TILES - 1, (int) ((top + view.getHeight()) / TILE));
+		Iterator<Map.Entry<Integer, Canvas>> shown = this.tiles.entrySet().iterator();
+		while (shown.hasNext()) {
+			Map.Entry<Integer, Canvas> tile = shown.next();
+			int column = tile.getKey() % TILES;
+			int row = tile.getKey() / TILES;
+			if (column < firstColumn || column > lastColumn || row < firstRow || row > lastRow) {
+				this.content.getChildren().remove(tile.getValue());
+				shown.remove();
+			}
+		}
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Integer key = row * TILES + column;
+				if (!this.tiles.containsKey(key)) {
+					Canvas tile = new Canvas(TILE, TILE);
+					tile.relocate(column * TILE, row * TILE);
+					tile.setMouseTransparent(true); // Clicks go through to the drawing area
+					drawTile(tile.getGraphicsContext2D(), column, row);
+					this.content.getChildren().add(tile);
+					this.tiles.put(key, tile);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Draws the lines that touch a tile onto its canvas.
+	 * The line strokes are relative to the origin, so the tile can cover parts of
+	 * several cells of the grid; the lines of those cells are merged in the order they are stored, each line once.
+	 * The lines are added to one path that is stroked once, instead of stroking every line on its own;
+	 * the path is only stroked early if it grows past PATH_POINTS points.
+	 * Points closer than DETAIL to the last point drawn are skipped, so lines smaller than a pixel
+	 * are collapsed into the line they belong to.
+	 * Cells the grid summarised because they hold more lines than can be told apart are drawn from their
+	 * bitmaps instead, so a dense tile costs its pixels rather than its lines; a line that also touches
+	 * a cell that is not summarised is still drawn from that cell.
+	 * @param cs -- the graphics context of the tile's canvas
+	 * @param column -- the column of the tile
+	 * @param row -- the row of the tile
+	 */
+	private void drawTile(GraphicsContext cs, int column, int row) {
+		Geometry coords = this.grid.getSegments();
+		double left = column * TILE - this.originX - this.grid.getLeft(); // The tile, in the coordinates of the grid
+		double top = row * TILE - this.originY - this.grid.getTop();
+		double cell = this.grid.getCellSize();
+		int firstColumn = Math.max(0, (int) Math.floor(left / cell));
+		int firstRow = Math.max(0, (int) Math.floor(top / cell));
+		int lastColumn = Math.min(this.grid.getColumns(), (int) Math.ceil((left + TILE) / cell)) - 1;
+		int lastRow = Math.min(this.grid.getRows(), (int) Math.ceil((top + TILE) / cell)) - 1;
+		int[] next = new int[Math.max(0, lastColumn - firstColumn + 1) * Math.max(0, lastRow - firstRow + 1)];
+		int[] ends = new int[next.length];
+		int cells = 0;
+		int[] summary = null;
+		for (int r = firstRow; r <= lastRow; r++) {
+			for (int c = firstColumn; c <= lastColumn; c++) {
+				long[] coverage = this.grid.getCoverage(c, r);
+				if (coverage != null) {
+					summary = summary == null ? new int[TILE * TILE] : summary;
+					drawCoverage(summary, coverage, c * cell - left, r * cell - top); // Where the cell starts on the tile
+				} else {
+					next[cells] = this.grid.start(c, r);
+					ends[cells++] = this.grid.end(c, r);
+				}
+			}
+		}
+		if (summary != null) { // Written before any line is stroked, so the lines are drawn over it
+			cs.getPixelWriter().setPixels(0, 0, TILE, TILE, PixelFormat.getIntArgbInstance(), summary, 0, TILE);
+		}
+		cs.setStroke(Color.BLACK);
+		cs.setLineWidth(1);
+		cs.translate(this.originX - column * TILE, this.originY - row * TILE); // Lines are drawn in the coordinates of the drawing area
+		cs.beginPath();
+		int previous = -1;
+		float lastX = 0;
+		float lastY = 0;
+		int points = 0;
+		int i = nextLine(next, ends, cells);
+		while (i >= 0) {
+			int following = nextLine(next, ends, cells);
+			if (i != previous) { // The line does not continue the last one, so start a new polyline
+				lastX = coords.get(i);
+				lastY = coords.get(i + 1);
+				cs.moveTo(lastX, lastY);
+			}
+			float x = coords.get(i + 2);
+			float y = coords.get(i + 3);
+			boolean last = following != i + 2;
+			if (last || Math.abs(x - lastX) >= DETAIL || Math.abs(y - lastY) >= DETAIL) {
+				cs.lineTo(x, y);
+				lastX = x;
+				lastY = y;
+				if (++points == PATH_POINTS) { // Strokes what is there so far, and continues from the same point
+					cs.stroke();
+					cs.beginPath();
+					cs.moveTo(x, y);
+					points = 0;
+				}
+			}
+			previous = i + 2;
+			i = following;
+		}
+		cs.stroke();
+	}
+	
+	/**
+	 * Draws the bitmap of a summarised cell into the pixels of a tile, a black pixel for every bit that is set.
+	 * @param summary -- the pixels of the tile, as ARGB
+	 * @param coverage -- the bitmap of the cell
+	 * @param x -- where the left edge of the cell is on the tile
+	 * @param y -- where the top edge of the cell is on the tile
+	 */
+	private void drawCoverage(int[] summary, long[] coverage, double x, double y) {
+		int resolution = this.grid.getResolution();
+		double pixel = this.grid.getCellSize() / resolution;
+		for (int w = 0; w < coverage.length; w++) {
+			for (long bits = coverage[w]; bits != 0; bits &= bits - 1) { // Only the bits that are set
+				int bit = (w << 6) + Long.numberOfTrailingZeros(bits);
+				int px = (int) Math.floor(x + bit % resolution * pixel);
+				int py = (int) Math.floor(y + bit / resolution * pixel);
+				if (px >= 0 && py >= 0 && px < TILE && py < TILE) {
+					summary[py * TILE + px] = 0xFF000000;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Takes the first line left in any of the cells being merged, skipping it in every cell that lists it.
+	 * @param next -- the position of the next line of every cell in the index
+	 * @param ends -- the position after the last line of every cell in the index
+	 * @param cells -- the number of cells being merged
+	 * @return the position of the line's first coordinate in the geometry, or -1 if no line is left
+	 */
+	private int nextLine(int[] next, int[] ends, int cells) {
+		int first = -1;
+		for (int c = 0; c < cells; c++) {
+			if (next[c] < ends[c] && (first < 0 || this.grid.get(next[c]) < first)) {
+				first = this.grid.get(next[c]);
+			}
+		}
+		for (int c = 0; c < cells; c++) {
+			if (next[c] < ends[c] && this.grid.get(next[c]) == first) {
+				next[c]++;
 			}
 		}
+		return first;
 	}
 	
 }
\ No newline at end of file
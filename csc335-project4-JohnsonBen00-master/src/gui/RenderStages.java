@@ -0,0 +1,112 @@
+package gui;
+
+import graphics.SegmentGrid;
+import model.LindenmayerModel;
+import model.ParametricSequence;
+import model.SymbolSequence;
+/**
+ * This class keeps what every stage of a render produced, so a render only recomputes the stages
+ * that depend on the fields of the model that changed.
+ * The stages are the final string, computed from the axiom, the rules, the seed and the iterations,
+ * and the line strokes, computed from the final string and the angle. The line strokes are relative
+ * to the origin, so moving the origin keeps both stages and only moves where they are drawn.
+ * It also keeps a copy of the inputs the pattern being shown was drawn from, which is what a save writes.
+ * Only used on the JavaFX Application Thread.
+ * @author Benhur J. Tadiparti
+ */
+public class RenderStages {
+
+	private SymbolSequence symbols;
+	private ParametricSequence sequence;
+	private SegmentGrid geometry;
+	private LindenmayerModel inputs;
+
+	/**
+	 * Drops the stages that depend on the fields that changed.
+	 * @param fields -- the bits of the fields of the model that changed
+	 */
+	public void invalidate(int fields) {
+		if ((fields & (LindenmayerModel.GRAMMAR | LindenmayerModel.ITERATIONS)) != 0) {
+			this.symbols = null;
+			this.sequence = null;
+		}
+		if ((fields & ~LindenmayerModel.ORIGIN) != 0) {
+			this.geometry = null;
+		}
+	}
+
+	/**
+	 * Drops every stage.
+	 */
+	public void clear() {
+		this.symbols = null;
+		this.sequence = null;
+		this.geometry = null;
+	}
+
+	/**
+	 * Returns the final string of the last render, if it was stored.
+	 * @return the final string, or null if it must be computed again or was streamed
+	 */
+	public SymbolSequence getSymbols() {
+		return this.symbols;
+	}
+
+	/**
+	 * Stores the final string of a render.
+	 * @param symbols -- the final string, or null if it was streamed
+	 */
+	public void setSymbols(SymbolSequence symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Returns the final string of the last render of a parametric L-system.
+	 * @return the symbols and their parameters, or null if they must be computed again
+	 */
+	public ParametricSequence getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * Stores the final string of a render of a parametric L-system.
+	 * @param sequence -- the symbols and their parameters
+	 */
+	public void setSequence(ParametricSequence sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Returns the line strokes of the last render, relative to the origin.
+	 * @return the indexed line strokes, or null if they must be computed again
+	 */
+	public SegmentGrid getGeometry() {
+		return this.geometry;
+	}
+
+	/**
+	 * Stores the line strokes of a render, relative to the origin.
+	 * @param geometry -- the indexed line strokes
+	 */
+	public void setGeometry(SegmentGrid geometry) {
+		this.geometry = geometry;
+	}
+
+	/**
+	 * Returns the inputs of the pattern being shown. They are not dropped when the fields change,
+	 * since the pattern stays on the canvas until the next render replaces it.
+	 * @return a copy of the inputs, or null if nothing was drawn yet
+	 */
+	public LindenmayerModel getInputs() {
+		return this.inputs;
+	}
+
+	/**
+	 * Stores the inputs of the pattern being shown.
+	 * @param inputs -- a copy of the inputs, which is not changed afterwards
+	 */
+	public void setInputs(LindenmayerModel inputs) {
+		this.inputs = inputs;
+	}
+
+}
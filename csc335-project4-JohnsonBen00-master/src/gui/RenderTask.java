@@ -0,0 +1,256 @@
+package gui;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import controller.LindenmayerController;
+import controller.LindenmayerFile;
+import controller.ParametricSystem;
+import controller.ProductionTable;
+import graphics.Geometry;
+import graphics.OffHeapSegments;
+import graphics.ParallelInterpreter;
+import graphics.SegmentGrid;
+import graphics.TranslatedGeometry;
+import graphics.TurtleGraphics;
+import javafx.concurrent.Task;
+import metrics.Metrics;
+import metrics.StageTimer;
+import model.ParametricSequence;
+import model.SymbolCursor;
+import model.SymbolSequence;
+/**
+ * This class computes the L-system, its line strokes and their index away from the JavaFX Application Thread.
+ * Everything it needs from the model is copied when it is created, so the user can keep
+ * editing while it runs; cancelling it stops the expansion and the turtle part way through.
+ * A final string kept from an earlier render is drawn again instead of being computed again,
+ * and the final string it computes is kept for the renders after it, unless it was streamed.
+ * A stored final string is read by many turtles at once; a streamed one is read by a single turtle as it is computed.
+ * The line strokes are stored outside of the heap; whoever takes the result frees them once they are not shown,
+ * and the task frees them itself if it is cancelled.
+ * @author Benhur J. Tadiparti
+ */
+public class RenderTask extends Task<SegmentGrid> {
+
+	/** How many symbols the turtle reads between checks for cancellation. */
+	private static final int CHECK_INTERVAL = 1 << 16;
+
+	/** A cell with more lines than its pixels divided by this is drawn from a bitmap of the pixels its lines cover. */
+	private static final int DENSITY = 4;
+
+	private LindenmayerController control;
+	private LindenmayerFile file;
+	private ProductionTable table;
+	private ParametricSystem parametric;
+	private String axiom;
+	private int iterations;
+	private SymbolSequence symbols;
+	private ParametricSequence sequence;
+	private TurtleGraphics graphics;
+	private int x;
+	private int y;
+	private int size;
+	private int cell;
+	private long read;
+	private AtomicReference<SegmentGrid> result;
+
+	/**
+	 * Copies the inputs of the L-system. Must be called on the JavaFX Application Thread.
+	 * @param control -- the controller that computes the L-system string
+	 * @param axiom -- the axiom of the L-system
+	 * @param iterations -- how many times the axiom is modified
+	 * @param stages -- the stages kept from the last render; its final string is drawn if there is one
+	 * @param graphics -- the turtle that calculates the line strokes
+	 * @param size -- the width and height of the area the lines are indexed in
+	 * @param cell -- the width and height of a cell of the index
+	 */
+	public RenderTask(LindenmayerController control, String axiom, int iterations, RenderStages stages,
+			TurtleGraphics graphics, int size, int cell) {
+		this.control = control;
+		this.table = control.getTable();
+		this.parametric = control.getParametric();
+		this.axiom = axiom;
+		this.iterations = iterations;
+		this.symbols = stages.getSymbols();
+		this.sequence = stages.getSequence();
+		this.graphics = graphics;
+		this.size = size;
+		this.cell = cell;
+		this.result = new AtomicReference<>();
+	}
+
+	/**
+	 * Reads the L-system from an opened file instead of computing it.
+	 * @param file -- the file holding the final string or the line strokes of the L-system
+	 * @param x -- the x coordinate of the origin the line strokes of the file start at
+	 * @param y -- the y coordinate of the origin the line strokes of the file start at
+	 * @param graphics -- the turtle that calculates the line strokes, if the file holds the final string
+	 * @param size -- the width and height of the area the lines are indexed in
+	 * @param cell -- the width and height of a cell of the index
+	 */
+	public RenderTask(LindenmayerFile file, int x, int y, TurtleGraphics graphics, int size, int cell) {
+		this.file = file;
+		this.x = x;
+		this.y = y;
+		this.graphics = graphics;
+		this.size = size;
+		this.cell = cell;
+		this.result = new AtomicReference<>();
+	}
+
+	/**
+	 * Returns the final string the task drew, so the next render can draw it again.
+	 * @return the final string, or null if it was streamed or the L-system is parametric
+	 */
+	public SymbolSequence getSymbols() {
+		return this.symbols;
+	}
+
+	/**
+	 * Returns how many iterations of the L-system the task drew.
+	 * @return the iterations asked for, or fewer if a parametric L-system grew past its limit
+	 */
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	/**
+	 * Returns the final string of a parametric L-system the task drew, so the next render can draw it again.
+	 * @return the symbols and their parameters, or null if the L-system is not parametric
+	 */
+	public ParametricSequence getSequence() {
+		return this.sequence;
+	}
+
+	@Override
+	/**
+	 * Computes the line strokes, relative to where the turtle starts, and indexes them by the cells of a grid
+	 * twice the width and height of the area, centred on the turtle, so the lines can be drawn from any origin in the area.
+	 */
+	protected SegmentGrid call() {
+		if (this.file != null && !this.file.hasSymbols()) { // The lines are read from the mapped file as they are
+			return index(new TranslatedGeometry(this.file.getSegments(), -this.x, -this.y));
+		}
+		OffHeapSegments segments = new OffHeapSegments();
+		SegmentGrid grid;
+		try {
+			grid = interpret(segments);
+		} catch (RuntimeException e) { // Nobody else can reach the lines, so they are freed here
+			segments.free();
+			throw e;
+		}
+		this.result.set(grid);
+		if (isCancelled()) { // Cancelled while the lines were indexed, so the result is thrown away
+			release(this.result.getAndSet(null));
+		}
+		return grid;
+	}
+
+	@Override
+	/**
+	 * Frees the lines of a result that was finished just before the task was cancelled, since it is never taken.
+	 * Runs on the JavaFX Application Thread.
+	 */
+	protected void cancelled() {
+		release(this.result.getAndSet(null));
+	}
+
+	/**
+	 * Frees the lines of a result that nobody will draw. Whichever of call() and cancelled() takes the result frees it.
+	 * @param grid -- the indexed lines, or null if the other one already freed them
+	 */
+	private static void release(SegmentGrid grid) {
+		if (grid != null) {
+			grid.free();
+			grid.getSegments().free();
+		}
+	}
+
+	/**
+	 * Computes the line strokes, relative to where the turtle starts, and indexes them.
+	 * @param segments -- where the line strokes are stored
+	 * @return the indexed line strokes
+	 */
+	private SegmentGrid interpret(OffHeapSegments segments) {
+		StageTimer timer;
+		if (this.file != null) {
+			timer = Metrics.start(Metrics.INTERPRET);
+			this.graphics.draw(cancellable(this.file.getSymbols()), segments);
+		} else if (this.parametric != null) { // Cancelling interrupts the expansion between iterations
+			if (this.sequence == null) {
+				timer = Metrics.start(Metrics.EXPAND);
+				this.sequence = this.parametric.expand(this.iterations);
+				this.iterations = this.parametric.getIterations();
+				Metrics.stop(timer, this.sequence.length(), 0, 0);
+			}
+			timer = Metrics.start(Metrics.INTERPRET);
+			for (this.read = 0; this.read < this.sequence.length() && !isCancelled(); this.read += CHECK_INTERVAL) {
+				this.graphics.draw(this.sequence, (int) this.read, (int) Math.min(this.sequence.length(), this.read + CHECK_INTERVAL),
+						this.table.getCommands(), segments);
+			}
+			this.read = Math.min(this.read, this.sequence.length());
+		} else {
+			SymbolCursor streamed = null;
+			if (this.symbols == null) { // Otherwise only the angle changed, so the final string is the same
+				timer = Metrics.start(Metrics.EXPAND);
+				this.symbols = this.control.expandStored(this.table, this.axiom, this.iterations);
+				if (this.symbols != null) {
+					Metrics.stop(timer, this.symbols.length(), 0, 0);
+				} else {
+					streamed = this.control.expand(this.table, this.axiom, this.iterations);
+					Metrics.stop(timer, -1, 0, 0); // A streamed string is computed while the turtle reads it
+				}
+			}
+			timer = Metrics.start(Metrics.INTERPRET);
+			if (streamed != null) {
+				this.graphics.draw(cancellable(streamed), this.table.getCommands(), segments);
+			} else {
+				new ParallelInterpreter().draw(this.graphics, this.symbols, this.table.getCommands(), segments, this::isCancelled);
+				this.read = this.symbols.length();
+			}
+		}
+		if (isCancelled()) {
+			throw new CancellationException();
+		}
+		Metrics.stop(timer, this.read, segments.getCount(), this.graphics.getMaxDepth());
+		return index(segments);
+	}
+
+	/**
+	 * Indexes line strokes that are relative to the origin by the cells of a grid that covers the area
+	 * wherever the origin is in it. The lines are drawn a unit to a pixel, so a cell with so many lines
+	 * that most of them are smaller than a pixel is summarised into a bitmap of a bit per pixel.
+	 * @param segments -- the line strokes, relative to the origin
+	 * @return the indexed line strokes
+	 */
+	private SegmentGrid index(Geometry segments) {
+		int cells = (2 * this.size + this.cell - 1) / this.cell;
+		SegmentGrid grid = new SegmentGrid(segments, -this.size, -this.size, this.cell, cells, cells);
+		grid.summarise(this.cell, this.cell * this.cell / DENSITY);
+		return grid;
+	}
+
+	/**
+	 * Wraps a cursor so the turtle stops reading once the task is cancelled, counting the symbols it reads.
+	 * @param symbols -- the symbols of the L-system
+	 * @return a cursor that throws a CancellationException once the task is cancelled
+	 */
+	private SymbolCursor cancellable(SymbolCursor symbols) {
+		return new SymbolCursor() {
+			@Override
+			public boolean hasNext() {
+				if ((RenderTask.this.read & (CHECK_INTERVAL - 1)) == 0 && isCancelled()) {
+					throw new CancellationException();
+				}
+				return symbols.hasNext();
+			}
+
+			@Override
+			public char next() {
+				RenderTask.this.read++;
+				return symbols.next();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,377 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+import controller.Admission;
+import controller.ExpansionDag;
+import controller.LindenmayerController;
+import controller.LindenmayerFile;
+import controller.ParametricSystem;
+import controller.ProductionTable;
+import graphics.LineSink;
+import graphics.OffHeapSegments;
+import graphics.SvgWriter;
+import graphics.TileRasterizer;
+import graphics.TurtleGraphics;
+import metrics.Metrics;
+import model.LindenmayerModel;
+import model.ParametricSequence;
+import model.Production;
+import model.SymbolCursor;
+import model.SymbolSequence;
+/**
+ * This class is one L-system of a batch file: its inputs, and the statistics of rendering it.
+ * A line of a batch file is a list of key=value pairs separated by spaces, for example
+ * <pre>name=plant axiom=X rule=X-&gt;F[+X]F[-X]+X rule=F-&gt;FF angle=25 iterations=6 width=2000 height=2000</pre>
+ * A rule whose left side is more than one symbol is chosen by chance or by its neighbours, as in
+ * rule=F:0.5-&gt;F[+F] or rule=A&lt;F-&gt;G, and seed picks which choices are made. A rule with parameters,
+ * as in rule=F(l):l&gt;1-&gt;F(l*0.7)[+F(l*0.5)] with axiom=F(100), makes the L-system parametric.
+ * Other keys are x and y (the turtle's starting point) and scale, which is either "fit" to fit the
+ * drawing in the image or the number of pixels per unit with the image's top left at (0, 0).
+ * With format=svg or format=svgz the drawing is written as a vector image instead, its coordinates
+ * rounded to the given number of decimals, and with format=lsys the line strokes, or the final string
+ * when it is smaller, are saved in the binary L-system file format so they can be opened later.
+ * An L-system over the budget of the controller is clamped to fewer iterations, and the
+ * statistics say so; a parametric one is clamped as it grows, since its size cannot be predicted.
+ * @author Benhur J. Tadiparti
+ */
+public class BatchJob {
+
+	/** How many pixels are left empty around a drawing that is fit to its image. */
+	private static final int MARGIN = 10;
+
+	private String name;
+	private LindenmayerModel model;
+	private int width;
+	private int height;
+	private double scale;
+	private String format;
+	private int decimals;
+	private long symbols;
+	private long segments;
+	private long millis;
+	private long allocated;
+	private long direct;
+	private String admission;
+	private String error;
+
+	/**
+	 * Reads an L-system from a line of a batch file.
+	 * @param line -- the line of key=value pairs
+	 * @param number -- the number of the line, used to name the L-system if it has no name
+	 * @throws IllegalArgumentException if the line has an unknown key or a value that cannot be read
+	 */
+	public BatchJob(String line, int number) {
+		this.name = "system" + number;
+		this.model = new LindenmayerModel();
+		this.width = 2000;
+		this.height = 2000;
+		this.scale = 0; // Fit the drawing to the image
+		this.format = "png";
+		this.decimals = 2;
+		this.model.beginUpdate(); // The batch never needs to be notified of changes
+		this.model.setOrigin(0, 0);
+		this.model.setAngle(90);
+		for (String pair : line.trim().split("\\s+")) {
+			int split = pair.indexOf('=');
+			if (split <= 0) {
+				throw new IllegalArgumentException("Line " + number + ": expected key=value, found " + pair);
+			}
+			String key = pair.substring(0, split);
+			String value = pair.substring(split + 1);
+			try {
+				read(key, value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Line " + number + ": " + key + " is not a number: " + value);
+			}
+		}
+		if (this.model.getAxiom().isEmpty()) {
+			throw new IllegalArgumentException("Line " + number + ": no axiom");
+		}
+	}
+
+	/**
+	 * Stores one key=value pair of the line.
+	 * @param key -- the name of the input
+	 * @param value -- the value of the input
+	 */
+	private void read(String key, String value) {
+		switch (key) {
+		case "name":
+			this.name = value;
+			break;
+		case "axiom":
+			this.model.setAxiom(value);
+			break;
+		case "rule":
+			int arrow = value.indexOf("->");
+			if (arrow < 1) {
+				throw new IllegalArgumentException("A rule must look like F->FF, found " + value);
+			}
+			if (value.contains("(")) {
+				this.model.addParametricRule(value);
+			} else if (arrow == 1) {
+				this.model.setMap(value.charAt(0), value.substring(arrow + 2));
+			} else {
+				this.model.addProduction(Production.parse(value.substring(0, arrow), value.substring(arrow + 2)));
+			}
+			break;
+		case "seed":
+			this.model.setSeed(Long.parseLong(value));
+			break;
+		case "angle":
+			this.model.setAngle(Integer.parseInt(value));
+			break;
+		case "iterations":
+			this.model.setIterations(Integer.parseInt(value));
+			break;
+		case "x":
+			this.model.setX(Integer.parseInt(value));
+			break;
+		case "y":
+			this.model.setY(Integer.parseInt(value));
+			break;
+		case "width":
+			this.width = Integer.parseInt(value);
+			break;
+		case "height":
+			this.height = Integer.parseInt(value);
+			break;
+		case "scale":
+			this.scale = value.equals("fit") ? 0 : Double.parseDouble(value);
+			break;
+		case "format":
+			if (!value.equals("png") && !value.equals("svg") && !value.equals("svgz") && !value.equals("lsys")) {
+				throw new IllegalArgumentException("The format must be png, svg, svgz or lsys, found " + value);
+			}
+			this.format = value;
+			break;
+		case "decimals":
+			this.decimals = Integer.parseInt(value);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown key " + key);
+		}
+	}
+
+	/**
+	 * Expands the L-system, computes its line strokes and writes them into an image,
+	 * recording how long it took and how much memory it used. Failures are recorded instead of thrown.
+	 * @param directory -- the directory the image is written in
+	 * @param tiles -- the threads that draw the tiles of the image
+	 */
+	public void run(File directory, ExecutorService tiles) {
+		long start = System.nanoTime();
+		long before = Metrics.allocatedBytes();
+		LongAdder others = Metrics.openJob(); // What the tile threads and pool workers allocate for this job
+		try {
+			LindenmayerController control = new LindenmayerController(this.model);
+			ProductionTable table = control.getTable();
+			admit(control, table);
+			if (this.format.equals("lsys")) {
+				writeFile(control, table, directory);
+			} else if (!this.format.equals("png")) {
+				writeSvg(control, table, directory);
+			} else {
+				writePng(control, table, directory, tiles);
+			}
+		} catch (IOException | RuntimeException e) {
+			this.error = e.toString();
+		} finally {
+			Metrics.closeJob();
+		}
+		this.millis = (System.nanoTime() - start) / 1000000;
+		this.allocated = Metrics.allocatedBytes() - before + others.sum();
+	}
+
+	/**
+	 * Predicts the size of the L-system before it is expanded, and draws fewer iterations of it
+	 * if it is over the budget.
+	 * @param control -- the class that expands the L-system
+	 * @param table -- the replacements of the L-system
+	 * @throws IllegalStateException if the L-system is too large to draw at all
+	 */
+	private void admit(LindenmayerController control, ProductionTable table) {
+		this.admission = "accept";
+		if (!this.model.getParametricRules().isEmpty()) { // Clamped as it is expanded
+			return;
+		}
+		Admission admission = control.admit(table, this.model.getAxiom(), this.model.getIterations());
+		if (!admission.isAdmitted()) {
+			this.admission = "reject";
+			throw new IllegalStateException(admission.toString());
+		}
+		if (admission.getAction() == Admission.CLAMP) {
+			this.admission = "clamp";
+			this.model.setIterations(admission.getIterations());
+		} else if (admission.getAction() == Admission.STREAM) {
+			this.admission = "stream";
+		}
+	}
+
+	/**
+	 * Stores the line strokes of the L-system outside of the heap and draws them into a PNG image.
+	 * @param control -- the class that expands the L-system
+	 * @param table -- the replacements of the L-system
+	 * @param directory -- the directory the image is written in
+	 * @param tiles -- the threads that draw the tiles of the image
+	 * @throws IOException if the image cannot be written
+	 */
+	private void writePng(LindenmayerController control, ProductionTable table, File directory, ExecutorService tiles) throws IOException {
+		OffHeapSegments lines = new OffHeapSegments();
+		try {
+			draw(control, table, lines);
+			this.segments = lines.getCount();
+			this.direct = lines.getBytes();
+			double[] bounds = lines.getBounds();
+			double scale = this.scale;
+			double left = 0;
+			double top = 0;
+			if (scale <= 0) { // Fits the drawing in the image, keeping its proportions
+				scale = Math.min((this.width - 2.0 * MARGIN) / Math.max(1e-9, bounds[2] - bounds[0]),
+						(this.height - 2.0 * MARGIN) / Math.max(1e-9, bounds[3] - bounds[1]));
+				left = bounds[0] - MARGIN / scale;
+				top = bounds[1] - MARGIN / scale;
+			}
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(directory, this.name + ".png")))) {
+				new TileRasterizer(tiles, TileRasterizer.DEFAULT_TILE).render(lines, left, top, scale, this.width, this.height, out);
+			}
+		} finally {
+			lines.free();
+		}
+	}
+
+	/**
+	 * Saves the inputs and the line strokes of the L-system in the binary L-system file format,
+	 * or its final string instead if the string could be stored and takes fewer bytes than the line strokes.
+	 * @param control -- the class that expands the L-system
+	 * @param table -- the replacements of the L-system
+	 * @param directory -- the directory the file is written in
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeFile(LindenmayerController control, ProductionTable table, File directory) throws IOException {
+		OffHeapSegments lines = new OffHeapSegments();
+		try {
+			draw(control, table, lines);
+			this.segments = lines.getCount();
+			this.direct = lines.getBytes();
+			File file = new File(directory, this.name + ".lsys");
+			SymbolSequence symbols = control.getParametric() == null
+					? control.expandStored(table, this.model.getAxiom(), this.model.getIterations()) : null; // Cached when it was drawn
+			if (symbols != null && LindenmayerFile.isSmallerAsSymbols(this.model, symbols.length(), lines)) {
+				LindenmayerFile.writeSymbols(file, this.model, symbols.cursor(), symbols.length());
+			} else {
+				LindenmayerFile.writeSegments(file, this.model, lines);
+			}
+		} finally {
+			lines.free();
+		}
+	}
+
+	/**
+	 * Writes the line strokes of the L-system into an SVG image as the turtle draws them,
+	 * so no line is kept in memory. The box of the drawing is computed without drawing when the
+	 * brackets of the L-system are balanced, and by drawing it once without writing it otherwise.
+	 * @param control -- the class that expands the L-system
+	 * @param table -- the replacements of the L-system
+	 * @param directory -- the directory the image is written in
+	 * @throws IOException if the image cannot be written
+	 */
+	private void writeSvg(LindenmayerController control, ProductionTable table, File directory) throws IOException {
+		int iterations = this.model.getIterations();
+		double[] bounds;
+		if (control.getParametric() == null && table.isSimple() && table.isBalanced()) {
+			bounds = new ExpansionDag(table, this.model.getAngle()).extent(this.model.getAxiom(), iterations, this.model.getX(), this.model.getY());
+		} else {
+			double[] box = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+			LineSink measure = (x1, y1, x2, y2) -> {
+				box[0] = Math.min(box[0], Math.min(x1, x2));
+				box[1] = Math.min(box[1], Math.min(y1, y2));
+				box[2] = Math.max(box[2], Math.max(x1, x2));
+				box[3] = Math.max(box[3], Math.max(y1, y2));
+			};
+			draw(control, table, measure);
+			bounds = box[0] > box[2] ? new double[] { 0, 0, 1, 1 } : box;
+		}
+		boolean compress = this.format.equals("svgz");
+		File file = new File(directory, this.name + "." + this.format);
+		try (SvgWriter out = new SvgWriter(new FileOutputStream(file), bounds, this.decimals, compress)) {
+			draw(control, table, out);
+			this.segments = out.getCount();
+		}
+	}
+
+	/**
+	 * Expands the L-system and passes the line strokes the turtle draws for it to a sink.
+	 * @param control -- the class that expands the L-system
+	 * @param table -- the replacements of the L-system
+	 * @param lines -- where the line strokes are sent
+	 */
+	private void draw(LindenmayerController control, ProductionTable table, LineSink lines) {
+		TurtleGraphics graphics = new TurtleGraphics(this.model.getX(), this.model.getY(), this.model.getAngle());
+		ParametricSystem parametric = control.getParametric();
+		if (parametric != null) {
+			ParametricSequence ls = parametric.expand(this.model.getIterations());
+			if (parametric.getIterations() < this.model.getIterations()) {
+				this.admission = "clamp";
+				this.model.setIterations(parametric.getIterations());
+			}
+			this.symbols = ls.length();
+			graphics.draw(ls, table.getCommands(), lines);
+		} else {
+			graphics.draw(expand(control, table), table.getCommands(), lines);
+		}
+	}
+
+	/**
+	 * Expands the L-system, counting its symbols as the turtle reads them.
+	 * @param control -- the class that expands the L-system
+	 * @param table -- the replacements of the L-system
+	 * @return a cursor over the final string
+	 */
+	private SymbolCursor expand(LindenmayerController control, ProductionTable table) {
+		SymbolCursor symbols = control.expand(table, this.model.getAxiom(), this.model.getIterations());
+		this.symbols = 0;
+		return new SymbolCursor() {
+			@Override
+			public boolean hasNext() {
+				return symbols.hasNext();
+			}
+
+			@Override
+			public char next() {
+				BatchJob.this.symbols++;
+				return symbols.next();
+			}
+		};
+	}
+
+	/**
+	 * Returns the header of the statistics written by toString().
+	 * The iterations are those that were drawn, fewer than asked for if the L-system was clamped.
+	 * The memory is the job's own, and neither column is a peak. allocated_bytes is every byte allocated on the heap
+	 * for the job, by its thread, the threads that drew its tiles and the pool workers that rewrote its string,
+	 * most of which was collected before the job ended. direct_bytes is the size of the direct memory
+	 * its line strokes were stored in, which is none for vector images.
+	 * @return the names of the statistics, separated by commas
+	 */
+	public static String header() {
+		return "name,iterations,admission,symbols,segments,millis,allocated_bytes,direct_bytes,error";
+	}
+
+	@Override
+	/**
+	 * Returns the statistics of the last run, separated by commas
+	 */
+	public String toString() {
+		return this.name + "," + this.model.getIterations() + "," + (this.admission == null ? "" : this.admission) + "," + this.symbols + "," + this.segments + ","
+				+ this.millis + "," + this.allocated + "," + this.direct + "," + (this.error == null ? "" : '"' + this.error.replace('"', '\'') + '"');
+	}
+
+}
@@ -1,20 +1,33 @@
 package main;
 
+import java.util.Arrays;
+
 import gui.LindenmayerView;
 import javafx.application.Application;
+import metrics.Metrics;
 /**
  * This class simulates the Lindenmayer Systems.
  * With the user's inputs, the program formulates a repeating pattern,
  * resulting a javaFX stage with lines on its canvas representing said patterns.
+ * The line strokes and their index are kept outside of the heap, in direct memory, which the JVM caps at the
+ * maximum heap size unless -XX:MaxDirectMemorySize is given; mvn javafx:run gives it.
  * @author Benhur J. Tadiparti
  */
 public class Lindenmayer {
 	
 	/**
 	 * Calls/Constructs the appropriate classes to simulate the L-system.
-	 * @param args -- Not used
+	 * With --batch as the first argument, the rest of the arguments are passed to LindenmayerBatch
+	 * and no window is opened. Either way the pipeline metrics can be read over JMX.
+	 * @param args -- --batch followed by the batch options, or not used
+	 * @throws Exception if the batch cannot be rendered
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
+		Metrics.register();
+		if (args.length > 0 && args[0].equals("--batch")) {
+			LindenmayerBatch.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		Application.launch(LindenmayerView.class, args);
 	}
 	
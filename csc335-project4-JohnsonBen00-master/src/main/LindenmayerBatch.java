@@ -0,0 +1,94 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ * This class renders a batch file of L-systems into PNG images without a display.
+ * It never touches JavaFX, so it starts quickly on servers:
+ * <pre>java main.LindenmayerBatch [--workers N] [--tile-threads N] [--out DIR] batch.txt</pre>
+ * Each L-system is rendered on one of the workers, and the statistics of every render are written
+ * to stats.csv in the output directory. See BatchJob for the format of the batch file.
+ * @author Benhur J. Tadiparti
+ */
+public class LindenmayerBatch {
+
+	/**
+	 * Reads the batch file and renders every L-system in it.
+	 * @param args -- the options and the path of the batch file
+	 * @throws IOException if the batch file cannot be read or the statistics cannot be written
+	 * @throws InterruptedException if interrupted while waiting for the renders
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		int tileThreads = Runtime.getRuntime().availableProcessors();
+		File out = new File(".");
+		String batch = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--workers") && i + 1 < args.length) {
+				workers = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--tile-threads") && i + 1 < args.length) {
+				tileThreads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--out") && i + 1 < args.length) {
+				out = new File(args[++i]);
+			} else {
+				batch = args[i];
+			}
+		}
+		if (batch == null) {
+			System.err.println("Usage: java main.LindenmayerBatch [--workers N] [--tile-threads N] [--out DIR] batch.txt");
+			System.exit(2);
+		}
+		
+		List<BatchJob> jobs = new ArrayList<>();
+		int number = 0;
+		for (String line : Files.readAllLines(new File(batch).toPath(), StandardCharsets.UTF_8)) {
+			number++;
+			if (!line.trim().isEmpty() && !line.trim().startsWith("#")) { // Blank lines and comments are skipped
+				try {
+					jobs.add(new BatchJob(line, number));
+				} catch (IllegalArgumentException e) {
+					System.err.println(batch + ": " + e.getMessage());
+					System.exit(2);
+				}
+			}
+		}
+		
+		out.mkdirs();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		ExecutorService tiles = Executors.newFixedThreadPool(tileThreads); // Separate, so workers never wait on themselves
+		File directory = out;
+		List<Future<?>> running = new ArrayList<>();
+		for (BatchJob job : jobs) {
+			running.add(pool.submit(() -> {
+				job.run(directory, tiles);
+				System.out.println(job);
+			}));
+		}
+		for (Future<?> job : running) {
+			try {
+				job.get();
+			} catch (ExecutionException e) { // Jobs record their own failures, so only an error gets here
+				System.err.println(batch + ": " + e.getCause());
+			}
+		}
+		pool.shutdown();
+		tiles.shutdown();
+		
+		try (PrintWriter stats = new PrintWriter(new File(out, "stats.csv"), "UTF-8")) {
+			stats.println(BatchJob.header());
+			for (BatchJob job : jobs) {
+				stats.println(job);
+			}
+		}
+	}
+
+}
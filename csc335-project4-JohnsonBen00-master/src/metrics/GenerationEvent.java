@@ -0,0 +1,29 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+/**
+ * This class is the Flight Recorder event of one generation of an expansion.
+ * @author Benhur J. Tadiparti
+ */
+@Name("lindenmayer.Generation")
+@Label("L-system Generation")
+@Category("Lindenmayer")
+@Description("One generation of the L-system string")
+class GenerationEvent extends Event {
+
+	@Label("Generation")
+	int generation;
+
+	@Label("Symbols")
+	long symbols;
+
+	@Label("Time")
+	@Timespan
+	long nanos;
+
+}
@@ -0,0 +1,206 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+/**
+ * This class records how long every stage of drawing an L-system takes, and what it produced.
+ * The stages are expanding the string, the turtle interpreting it into line strokes, and drawing the strokes.
+ * Every stage records its wall time, the bytes allocated by its thread and by the pool workers that computed
+ * parts of it, and its counts; the expansion also records the symbols of every generation.
+ * Records go to the PipelineMetrics MBean and, while a Flight Recorder
+ * recording is running, to StageEvent and GenerationEvent.
+ * Recording is off unless the system property lindenmayer.metrics is true or it is turned on through
+ * setEnabled() or the MBean. While it is off, a stage costs one volatile read and allocates nothing.
+ * @author Benhur J. Tadiparti
+ */
+public class Metrics {
+
+	/** The stages of drawing an L-system. */
+	public static final int EXPAND = 0, INTERPRET = 1, DRAW = 2;
+
+	/** The name the MBean is registered under. */
+	public static final String OBJECT_NAME = "lindenmayer:type=PipelineMetrics";
+
+	private static final String[] NAMES = { "expand", "interpret", "draw" };
+
+	private static final PipelineMetrics STATS = new PipelineMetrics();
+
+	private static final LongAdder WORKERS = new LongAdder();
+
+	private static final ThreadLocal<LongAdder> JOB = new ThreadLocal<>(); // What other threads allocated for the thread's job
+	private static volatile boolean enabled = Boolean.getBoolean("lindenmayer.metrics");
+
+	/**
+	 * Checks if the stages are being recorded.
+	 * @return true if recording is on, else false
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns recording on or off.
+	 * @param on -- true to record the stages, false to stop
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * Registers the MBean with the platform MBean server, so the records can be read with JConsole or any JMX client.
+	 * Does nothing if it is registered already.
+	 */
+	public static void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(STATS, name);
+			}
+		} catch (JMException e) { // The program runs the same without the MBean
+			System.err.println("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Starts timing a stage on the calling thread.
+	 * Starting the expansion clears the generations recorded for the last one.
+	 * @param stage -- EXPAND, INTERPRET or DRAW
+	 * @return the timer of the stage, or null if recording is off
+	 */
+	public static StageTimer start(int stage) {
+		if (!enabled) {
+			return null;
+		}
+		if (stage == EXPAND) {
+			STATS.clearGenerations();
+		}
+		return new StageTimer(stage);
+	}
+
+	/**
+	 * Stops timing a stage and records it.
+	 * @param timer -- the timer returned by start(), or null if recording was off
+	 * @param symbols -- the symbols the stage produced or read, or -1 if it does not know
+	 * @param segments -- the line strokes the stage produced or drew
+	 * @param depth -- the most brackets that were open at once, or 0
+	 */
+	public static void stop(StageTimer timer, long symbols, long segments, int depth) {
+		if (timer != null) {
+			STATS.record(timer.stop(symbols, segments, depth), timer.getNanos(), symbols, segments, depth, timer.getAllocated());
+		}
+	}
+
+	/**
+	 * Records one generation of the expansion. Callers check isEnabled() before timing the generation.
+	 * @param generation -- the number of the generation, counting the axiom as 0
+	 * @param symbols -- the number of symbols in the generation
+	 * @param nanos -- how long the generation took to compute
+	 */
+	public static void generation(int generation, long symbols, long nanos) {
+		STATS.recordGeneration(generation, symbols);
+		GenerationEvent event = new GenerationEvent();
+		if (event.shouldCommit()) {
+			event.generation = generation;
+			event.symbols = symbols;
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes the calling thread has allocated so far, if the JVM can tell.
+	 * @return the allocated bytes, or 0 if the JVM does not measure them
+	 */
+	public static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Starts counting what other threads allocate for the job running on the calling thread,
+	 * until closeJob() is called on it. Tasks started for the job take the count with job().
+	 * @return the count, which the tasks add to as they finish
+	 */
+	public static LongAdder openJob() {
+		LongAdder job = new LongAdder();
+		JOB.set(job);
+		return job;
+	}
+
+	/**
+	 * Stops counting what other threads allocate for the job running on the calling thread.
+	 */
+	public static void closeJob() {
+		JOB.remove();
+	}
+
+	/**
+	 * Returns the count of what other threads allocate for the job running on the calling thread.
+	 * @return the count, or null if no job is being counted
+	 */
+	public static LongAdder job() {
+		return JOB.get();
+	}
+
+	/**
+	 * Starts measuring what a pool worker allocates while it computes part of a stage or of a job.
+	 * Threads that are not pool workers are measured by the stage or the job itself, so they are not measured again.
+	 * @param job -- the count of the job the part belongs to, or null
+	 * @return the bytes the worker has allocated so far, or -1 if nothing is counting them or the thread is not a pool worker
+	 */
+	public static long workerStart(LongAdder job) {
+		return (enabled || job != null) && Thread.currentThread() instanceof ForkJoinWorkerThread ? allocatedBytes() : -1;
+	}
+
+	/**
+	 * Adds what a pool worker allocated since workerStart() to the stages being timed and to its job.
+	 * @param start -- what workerStart() returned
+	 * @param job -- the count of the job the part belongs to, or null
+	 */
+	public static void workerStop(long start, LongAdder job) {
+		if (start >= 0) {
+			long bytes = allocatedBytes() - start;
+			if (enabled) {
+				WORKERS.add(bytes);
+			}
+			if (job != null) {
+				job.add(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Returns the bytes pool workers have allocated for stages so far.
+	 * @return the allocated bytes, counted since the program started
+	 */
+	static long workerBytes() {
+		return WORKERS.sum();
+	}
+
+	/**
+	 * Returns the name of a stage.
+	 * @param stage -- EXPAND, INTERPRET or DRAW
+	 * @return the name of the stage
+	 */
+	public static String name(int stage) {
+		return NAMES[stage];
+	}
+
+	/**
+	 * Returns the last record of every stage, one line per stage, for the view's overlay.
+	 * @return the records written out
+	 */
+	public static String summary() {
+		return STATS.getSummary();
+	}
+
+}
@@ -0,0 +1,158 @@
+package metrics;
+
+import java.util.Arrays;
+/**
+ * This class keeps the last record of every stage, and serves them as an MBean.
+ * Records are written by the threads running the stages and read by JMX clients and the view,
+ * so every access is synchronized; only runs recorded while recording is on reach it.
+ * @author Benhur J. Tadiparti
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+	private long[] nanos;
+	private long[] allocated;
+	private long symbols;
+	private long segments;
+	private int depth;
+	private long[] generations;
+	private long runs;
+
+	/**
+	 * Initializes the fields required.
+	 */
+	PipelineMetrics() {
+		this.nanos = new long[3];
+		this.allocated = new long[3];
+		this.generations = new long[0];
+	}
+
+	/**
+	 * Stores the record of one run of a stage.
+	 * @param stage -- EXPAND, INTERPRET or DRAW
+	 * @param nanos -- the wall time of the stage
+	 * @param symbols -- the symbols the stage produced or read, or -1 if it does not know
+	 * @param segments -- the line strokes the stage produced or drew
+	 * @param depth -- the most brackets that were open at once, or 0
+	 * @param allocated -- the bytes the stage's thread allocated
+	 */
+	synchronized void record(int stage, long nanos, long symbols, long segments, int depth, long allocated) {
+		this.nanos[stage] = nanos;
+		this.allocated[stage] = allocated;
+		if (symbols >= 0) {
+			this.symbols = symbols;
+		}
+		if (stage == Metrics.INTERPRET) {
+			this.segments = segments;
+			this.depth = depth;
+		}
+		if (stage == Metrics.DRAW) {
+			this.runs++;
+		}
+	}
+
+	/**
+	 * Stores the number of symbols of one generation of the expansion.
+	 * @param generation -- the number of the generation, counting the axiom as 0
+	 * @param symbols -- the number of symbols in the generation
+	 */
+	synchronized void recordGeneration(int generation, long symbols) {
+		if (generation >= this.generations.length) {
+			this.generations = Arrays.copyOf(this.generations, generation + 1);
+		}
+		this.generations[generation] = symbols;
+	}
+
+	/**
+	 * Forgets the generations of the last expansion.
+	 */
+	synchronized void clearGenerations() {
+		this.generations = new long[0];
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return Metrics.isEnabled();
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		Metrics.setEnabled(enabled);
+	}
+
+	@Override
+	public synchronized long getExpandNanos() {
+		return this.nanos[Metrics.EXPAND];
+	}
+
+	@Override
+	public synchronized long getInterpretNanos() {
+		return this.nanos[Metrics.INTERPRET];
+	}
+
+	@Override
+	public synchronized long getDrawNanos() {
+		return this.nanos[Metrics.DRAW];
+	}
+
+	@Override
+	public synchronized long getExpandAllocatedBytes() {
+		return this.allocated[Metrics.EXPAND];
+	}
+
+	@Override
+	public synchronized long getInterpretAllocatedBytes() {
+		return this.allocated[Metrics.INTERPRET];
+	}
+
+	@Override
+	public synchronized long getDrawAllocatedBytes() {
+		return this.allocated[Metrics.DRAW];
+	}
+
+	@Override
+	public synchronized long getSymbols() {
+		return this.symbols;
+	}
+
+	@Override
+	public synchronized long getSegments() {
+		return this.segments;
+	}
+
+	@Override
+	public synchronized int getMaxDepth() {
+		return this.depth;
+	}
+
+	@Override
+	public synchronized long[] getGenerationSymbols() {
+		return this.generations.clone();
+	}
+
+	@Override
+	public synchronized long getRuns() {
+		return this.runs;
+	}
+
+	@Override
+	public synchronized String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		for (int stage = Metrics.EXPAND; stage <= Metrics.DRAW; stage++) {
+			sb.append(String.format("%-9s %8.1f ms %8.1f MB%n", Metrics.name(stage), this.nanos[stage] / 1e6, this.allocated[stage] / 1e6));
+		}
+		sb.append(String.format("%,d symbols, %,d segments, depth %d", this.symbols, this.segments, this.depth));
+		return sb.toString();
+	}
+
+	@Override
+	public synchronized void reset() {
+		Arrays.fill(this.nanos, 0);
+		Arrays.fill(this.allocated, 0);
+		this.symbols = 0;
+		this.segments = 0;
+		this.depth = 0;
+		this.generations = new long[0];
+		this.runs = 0;
+	}
+
+}
@@ -0,0 +1,99 @@
+package metrics;
+/**
+ * This interface is what JMX clients can read and change of the records of the stages.
+ * Times, counts and allocations are of the last run of each stage.
+ * @author Benhur J. Tadiparti
+ */
+public interface PipelineMetricsMBean {
+
+	/**
+	 * Checks if the stages are being recorded.
+	 * @return true if recording is on, else false
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Turns recording on or off.
+	 * @param enabled -- true to record the stages, false to stop
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Returns how long the last expansion took.
+	 * @return the wall time in nanoseconds
+	 */
+	long getExpandNanos();
+
+	/**
+	 * Returns how long the turtle took to interpret the last string.
+	 * @return the wall time in nanoseconds
+	 */
+	long getInterpretNanos();
+
+	/**
+	 * Returns how long the last drawing took.
+	 * @return the wall time in nanoseconds
+	 */
+	long getDrawNanos();
+
+	/**
+	 * Returns how many bytes the last expansion allocated on the thread that ran it.
+	 * @return the allocated bytes
+	 */
+	long getExpandAllocatedBytes();
+
+	/**
+	 * Returns how many bytes the turtle allocated while interpreting the last string.
+	 * @return the allocated bytes
+	 */
+	long getInterpretAllocatedBytes();
+
+	/**
+	 * Returns how many bytes the last drawing allocated.
+	 * @return the allocated bytes
+	 */
+	long getDrawAllocatedBytes();
+
+	/**
+	 * Returns the length of the last final string.
+	 * @return the number of symbols
+	 */
+	long getSymbols();
+
+	/**
+	 * Returns how many line strokes the turtle drew for the last string.
+	 * @return the number of line strokes
+	 */
+	long getSegments();
+
+	/**
+	 * Returns the most brackets that were open at once in the last string.
+	 * @return the deepest bracket depth
+	 */
+	int getMaxDepth();
+
+	/**
+	 * Returns the number of symbols of every generation of the last expansion, indexed by generation.
+	 * Generations that were read from the cache instead of computed are 0.
+	 * @return the symbols of every generation
+	 */
+	long[] getGenerationSymbols();
+
+	/**
+	 * Returns how many drawings were recorded.
+	 * @return the number of drawings
+	 */
+	long getRuns();
+
+	/**
+	 * Returns the last record of every stage written out, one line per stage.
+	 * @return the records
+	 */
+	String getSummary();
+
+	/**
+	 * Forgets every record.
+	 */
+	void reset();
+
+}
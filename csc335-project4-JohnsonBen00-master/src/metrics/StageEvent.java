@@ -0,0 +1,35 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+/**
+ * This class is the Flight Recorder event of one run of a stage. Its duration is the wall time of the stage.
+ * @author Benhur J. Tadiparti
+ */
+@Name("lindenmayer.Stage")
+@Label("L-system Stage")
+@Category("Lindenmayer")
+@Description("One run of expanding, interpreting or drawing an L-system")
+class StageEvent extends Event {
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Symbols")
+	long symbols;
+
+	@Label("Segments")
+	long segments;
+
+	@Label("Bracket Depth")
+	int depth;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+
+}
@@ -0,0 +1,69 @@
+package metrics;
+/**
+ * This class times one run of a stage on the thread that started it.
+ * The bytes it records are those the thread allocated plus those pool workers reported with Metrics.workerStop()
+ * while the stage ran, which would include the workers of another stage running at the same time.
+ * It is only created while recording is on.
+ * @author Benhur J. Tadiparti
+ */
+public class StageTimer {
+
+	private int stage;
+	private long start;
+	private long allocated;
+	private long workers;
+	private long nanos;
+	private StageEvent event;
+
+	/**
+	 * Starts timing a stage.
+	 * @param stage -- EXPAND, INTERPRET or DRAW
+	 */
+	StageTimer(int stage) {
+		this.stage = stage;
+		this.event = new StageEvent();
+		this.event.begin();
+		this.allocated = Metrics.allocatedBytes();
+		this.workers = Metrics.workerBytes();
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Stops timing the stage, and commits its Flight Recorder event if one is being recorded.
+	 * @param symbols -- the symbols the stage produced or read, or -1 if it does not know
+	 * @param segments -- the line strokes the stage produced or drew
+	 * @param depth -- the most brackets that were open at once, or 0
+	 * @return the stage that was timed
+	 */
+	int stop(long symbols, long segments, int depth) {
+		this.nanos = System.nanoTime() - this.start;
+		this.allocated = Metrics.allocatedBytes() - this.allocated + Metrics.workerBytes() - this.workers;
+		this.event.end();
+		if (this.event.shouldCommit()) {
+			this.event.stage = Metrics.name(this.stage);
+			this.event.symbols = symbols;
+			this.event.segments = segments;
+			this.event.depth = depth;
+			this.event.allocated = this.allocated;
+			this.event.commit();
+		}
+		return this.stage;
+	}
+
+	/**
+	 * Returns how long the stage took.
+	 * @return the wall time of the stage in nanoseconds
+	 */
+	long getNanos() {
+		return this.nanos;
+	}
+
+	/**
+	 * Returns how many bytes the thread and the pool workers allocated during the stage.
+	 * @return the allocated bytes, or 0 if the JVM does not measure them
+	 */
+	long getAllocated() {
+		return this.allocated;
+	}
+
+}
@@ -1,7 +1,9 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 /**
  * This class has methods that stores and interacts with the user's inputs.
@@ -9,13 +11,24 @@ import java.util.Set;
  */
 public class LindenmayerModel extends java.util.Observable{
 	
+	/**
+	 * The fields a change can be to: the origin, the angle, the iterations, or what the string is made of
+	 * (the axiom, the rules and the seed). Observers are notified with the bits of the fields that changed.
+	 */
+	public static final int ORIGIN = 1, ANGLE = 2, ITERATIONS = 4, GRAMMAR = 8;
+	
 	private int x;
 	private int y;
 	private int iterations;
 	private int angle;
-	private char axiom;
+	private String axiom;
 	private HashMap<Character, String> mapping;
-	private ArrayList<Character> result;
+	private ArrayList<Production> productions;
+	private ArrayList<String> parametric;
+	private long seed;
+	private volatile SymbolSequence result; // Written by the thread that computes the L-system
+	private int updates;
+	private int fields;
 	
 	/**
 	 * Initials important fields that store the user's inputs.
@@ -25,9 +38,46 @@ public class LindenmayerModel extends java.util.Observable{
     	this.y = -1;
     	this.iterations = 6;
     	this.angle = -1;
-    	this.axiom = '0';
+    	this.axiom = "";
     	this.mapping = new HashMap<>();
-    	this.result = new ArrayList<>();
+    	this.productions = new ArrayList<>();
+    	this.parametric = new ArrayList<>();
+    	this.seed = 0;
+    	this.result = new SymbolSequence(new char[0], 0);
+    	this.updates = 0;
+    	this.fields = 0;
+    }
+    
+    /**
+     * Starts a batch of changes. Observers are not notified until the matching commit(),
+     * so several fields can be changed with a single recompute of the L-system.
+     */
+    public void beginUpdate() {
+    	this.updates++;
+    }
+    
+    /**
+     * Ends a batch of changes, notifying observers once if any field was changed during it.
+     */
+    public void commit() {
+    	if (this.updates > 0) {
+    		this.updates--;
+    	}
+    	if (this.updates == 0 && this.fields != 0) {
+    		changed(0);
+    	}
+    }
+    
+    /**
+     * Stores the x and y coordinates the user chose as a single change.
+     * @param x -- the "root" x coordinate of the L-system
+     * @param y -- the "root" y coordinate of the L-system
+     */
+    public void setOrigin(int x, int y) {
+    	beginUpdate();
+    	setX(x);
+    	setY(y);
+    	commit();
     }
     
     /**
@@ -36,10 +86,7 @@ public class LindenmayerModel extends java.util.Observable{
      */
     public void setX(int x) {
     	this.x = x;
-    	if (checkfields()) {
-    		setChanged();
-    		notifyObservers();
-    	}
+    	changed(ORIGIN);
     }
     
     /**
@@ -56,10 +103,7 @@ public class LindenmayerModel extends java.util.Observable{
      */
     public void setY(int y) {
     	this.y = y;
-    	if (checkfields()) {
-    		setChanged();
-    		notifyObservers();
-    	}
+    	changed(ORIGIN);
     }
     
     /**
@@ -77,10 +121,7 @@ public class LindenmayerModel extends java.util.Observable{
      */
     public void setIterations(int i) {
     	this.iterations = i;
-    	if (checkfields()) {
-    		setChanged();
-    		notifyObservers();
-    	}
+    	changed(ITERATIONS);
     }
     
     /**
@@ -98,10 +139,7 @@ public class LindenmayerModel extends java.util.Observable{
      */
     public void setAngle(int a) {
     	this.angle = a;
-    	if (checkfields()) {
-    		setChanged();
-    		notifyObservers();
-    	}
+    	changed(ANGLE);
     }
     
     /**
@@ -114,21 +152,18 @@ public class LindenmayerModel extends java.util.Observable{
     
     /**
      * Stores the axiom the user chose to start the L-system off with.
-     * @param ax -- the axiom the user would like to start the L-system with
+     * @param ax -- the symbols the user would like to start the L-system with
      */
-    public void setAxiom(char ax) {
+    public void setAxiom(String ax) {
     	this.axiom = ax;
-    	if (checkfields()) {
-    		setChanged();
-    		notifyObservers();
-    	}
+    	changed(GRAMMAR);
     }
     
     /**
      * Returns the axiom the user enter for the L-system.
-     * @return the axiom used to created the L-system
+     * @return the axiom used to created the L-system, or an empty string if none was entered
      */
-    public char getAxiom() {
+    public String getAxiom() {
     	return this.axiom;
     }
     
@@ -143,9 +178,16 @@ public class LindenmayerModel extends java.util.Observable{
     	} else {
     		this.mapping.put(m, string);
     	}
-    	if (checkfields()) {
-    		setChanged();
-    		notifyObservers();
+    	changed(GRAMMAR);
+    }
+    
+    /**
+     * Removes a key, and its value, from the L-system "mapping".
+     * @param m -- the key that is no longer replaced in the L-system
+     */
+    public void removeMap(char m) {
+    	if (this.mapping.remove(m) != null) {
+    		changed(GRAMMAR);
     	}
     }
     
@@ -166,6 +208,78 @@ public class LindenmayerModel extends java.util.Observable{
     	return this.mapping.get(m);
     }
     
+    /**
+     * Adds a rule that is chosen by chance or by the symbols around it.
+     * @param production -- the rule being added
+     */
+    public void addProduction(Production production) {
+    	this.productions.add(production);
+    	changed(GRAMMAR);
+    }
+    
+    /**
+     * Removes a rule that is chosen by chance or by the symbols around it.
+     * @param production -- the rule being removed
+     */
+    public void removeProduction(Production production) {
+    	if (this.productions.remove(production)) {
+    		changed(GRAMMAR);
+    	}
+    }
+    
+    /**
+     * Returns the rules that are chosen by chance or by the symbols around them, in the order they were added.
+     * @return the rules, which cannot be modified through the list
+     */
+    public List<Production> getProductions() {
+    	return Collections.unmodifiableList(this.productions);
+    }
+    
+    /**
+     * Adds a rule whose symbols carry parameters, written as "F(l) : l>1 -> F(l*0.7)[+F(l*0.5)]".
+     * @param rule -- the text of the rule being added
+     */
+    public void addParametricRule(String rule) {
+    	this.parametric.add(rule);
+    	changed(GRAMMAR);
+    }
+    
+    /**
+     * Removes a rule whose symbols carry parameters.
+     * @param rule -- the text of the rule being removed
+     */
+    public void removeParametricRule(String rule) {
+    	if (this.parametric.remove(rule)) {
+    		changed(GRAMMAR);
+    	}
+    }
+    
+    /**
+     * Returns the rules whose symbols carry parameters, in the order they were added.
+     * The L-system is parametric while this list is not empty.
+     * @return the text of the rules, which cannot be modified through the list
+     */
+    public List<String> getParametricRules() {
+    	return Collections.unmodifiableList(this.parametric);
+    }
+    
+    /**
+     * Stores the seed the rules chosen by chance are picked with. The same seed always gives the same L-system.
+     * @param seed -- the seed of the L-system
+     */
+    public void setSeed(long seed) {
+    	this.seed = seed;
+    	changed(GRAMMAR);
+    }
+    
+    /**
+     * Returns the seed the rules chosen by chance are picked with.
+     * @return the seed of the L-system
+     */
+    public long getSeed() {
+    	return this.seed;
+    }
+    
     /**
      * Returns the size of the "mapping"
      * @return the size of the "mapping" HashMap 
@@ -175,24 +289,76 @@ public class LindenmayerModel extends java.util.Observable{
     }
     
     /**
-     * Stores the modified L-system string in an ArrayList that the user wants.
+     * Stores the modified L-system string that the user wants.
      * @param replace -- the modified string of the L-system
      */
     public void setResult(String replace) {
-    	this.result.clear();
-    	for (int i = 0; i < replace.length(); i ++) {
-    		this.result.add(replace.charAt(i));
-    	}
+    	setResult(replace.toCharArray(), replace.length());
+    }
+    
+    /**
+     * Stores the modified L-system string without copying it.
+     * The model takes ownership of the array, so the caller must not modify it afterwards.
+     * @param replace -- the array holding the modified string of the L-system
+     * @param length -- the number of symbols used in the array
+     */
+    public void setResult(char[] replace, int length) {
+    	this.result = new SymbolSequence(replace, length);
+    }
+    
+    /**
+     * Stores a modified L-system string that is already wrapped in a sequence.
+     * @param replace -- the sequence holding the modified string of the L-system
+     */
+    public void setResult(SymbolSequence replace) {
+    	this.result = replace;
     }
     
     /**
-     * Returns an ArrayList containing the modified L-system string.
-     * @return the ArrayList that stores the modified string of the L-system
+     * Returns the modified L-system string.
+     * @return the sequence that stores the modified string of the L-system
      */
-    public ArrayList<Character> getResult() {
+    public SymbolSequence getResult() {
     	return this.result;
     }
     
+    /**
+     * Returns a copy of the user's inputs that later changes to this model do not reach,
+     * so another thread can read them while the user keeps editing.
+     * The copy has no observers and an empty result.
+     * @return a new model holding the same inputs
+     */
+    public LindenmayerModel copy() {
+    	LindenmayerModel copy = new LindenmayerModel();
+    	copy.x = this.x;
+    	copy.y = this.y;
+    	copy.iterations = this.iterations;
+    	copy.angle = this.angle;
+    	copy.axiom = this.axiom;
+    	copy.mapping = new HashMap<>(this.mapping);
+    	copy.productions = new ArrayList<>(this.productions);
+    	copy.parametric = new ArrayList<>(this.parametric);
+    	copy.seed = this.seed;
+    	return copy;
+    }
+    
+    /**
+     * Notifies observers that a field was changed if all required inputs are entered,
+     * or remembers the change if a batch of changes is still open or an input is missing.
+     * Observers receive every field changed since they were last notified, as an Integer of the field bits,
+     * so they only recompute what depends on those fields.
+     * @param field -- ORIGIN, ANGLE, ITERATIONS or GRAMMAR, or 0 to only send the remembered changes
+     */
+    private void changed(int field) {
+    	this.fields |= field;
+    	if (this.updates == 0 && checkfields()) {
+    		Integer changed = this.fields;
+    		this.fields = 0;
+    		setChanged();
+    		notifyObservers(changed);
+    	}
+    }
+    
     /**
      * Checks if all required inputs for the L-system are entered.
      * @return -- true if all fields are entered, else false
@@ -204,9 +370,9 @@ public class LindenmayerModel extends java.util.Observable{
     		return false;
     	} else if (this.angle == -1) {
     		return false;
-    	} else if (this.axiom == '0') {
+    	} else if (this.axiom.isEmpty()) {
     		return false;
-    	} else if (this.mapping.size() != 2) {
+    	} else if (this.mapping.isEmpty() && this.productions.isEmpty() && this.parametric.isEmpty()) {
     		return false;
     	}
 		return true;
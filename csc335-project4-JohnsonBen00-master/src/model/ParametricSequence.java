@@ -0,0 +1,117 @@
+package model;
+/**
+ * This class stores a parametric L-system string. The symbols are kept in a primitive char array,
+ * and the parameters of every symbol are kept next to them in a primitive double array, in the same order,
+ * so a string of millions of symbols is three arrays instead of millions of objects.
+ * The arrays are owned by the sequence once it is created, and are never modified.
+ * @author Benhur J. Tadiparti
+ */
+public class ParametricSequence {
+
+	private final char[] symbols;
+	private final int[] offsets;
+	private final double[] params;
+	private final int length;
+
+	/**
+	 * Wraps the arrays of a string without copying them.
+	 * @param symbols -- the array holding the symbols of the L-system
+	 * @param offsets -- where the parameters of every symbol start in params, with one more entry after the last symbol
+	 * @param params -- the parameters of every symbol
+	 * @param length -- the number of symbols used in the arrays
+	 */
+	public ParametricSequence(char[] symbols, int[] offsets, double[] params, int length) {
+		this.symbols = symbols;
+		this.offsets = offsets;
+		this.params = params;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the number of symbols in the L-system.
+	 * @return the number of symbols
+	 */
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the symbol at an index of the L-system.
+	 * @param i -- the index of the symbol
+	 * @return the symbol at said index
+	 */
+	public char charAt(int i) {
+		if (i >= this.length) {
+			throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + this.length);
+		}
+		return this.symbols[i];
+	}
+
+	/**
+	 * Returns how many parameters the symbol at an index has.
+	 * @param i -- the index of the symbol
+	 * @return the number of parameters
+	 */
+	public int arity(int i) {
+		return this.offsets[i + 1] - this.offsets[i];
+	}
+
+	/**
+	 * Returns a parameter of the symbol at an index.
+	 * @param i -- the index of the symbol
+	 * @param k -- which of its parameters, starting at 0
+	 * @return the value of the parameter
+	 */
+	public double param(int i, int k) {
+		if (k >= arity(i)) {
+			throw new IndexOutOfBoundsException("Parameter " + k + " out of bounds for arity " + arity(i));
+		}
+		return this.params[this.offsets[i] + k];
+	}
+
+	/**
+	 * Returns the array holding the symbols. Only the first length() entries are used.
+	 * @return the symbols of the L-system
+	 */
+	public char[] getSymbols() {
+		return this.symbols;
+	}
+
+	/**
+	 * Returns where the parameters of every symbol start. Entry length() is where the last symbol's parameters end.
+	 * @return the offsets into the parameters
+	 */
+	public int[] getOffsets() {
+		return this.offsets;
+	}
+
+	/**
+	 * Returns the array holding the parameters of every symbol.
+	 * @return the parameters of the L-system
+	 */
+	public double[] getParams() {
+		return this.params;
+	}
+
+	@Override
+	/**
+	 * Returns the L-system written out, with the parameters of every symbol in parentheses.
+	 * @return the string of the L-system
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.length; i++) {
+			sb.append(this.symbols[i]);
+			for (int k = this.offsets[i]; k < this.offsets[i + 1]; k++) {
+				sb.append(k == this.offsets[i] ? '(' : ',');
+				double value = this.params[k];
+				sb.append(value == (long) value ? Long.toString((long) value) : Double.toString(value));
+			}
+			if (arity(i) > 0) {
+				sb.append(')');
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,124 @@
+package model;
+/**
+ * This class stores one rule of the L-system that is chosen by chance or by the symbols around it.
+ * A rule replaces its symbol only where the symbol right before it and the symbol right after it
+ * match the rule's context, and among the rules that match, one is picked with a chance that
+ * grows with its weight.
+ * Rules are written as [left&lt;]symbol[&gt;right][:weight], for example "A&lt;F&gt;B:0.5".
+ * @author Benhur J. Tadiparti
+ */
+public class Production {
+
+	/** The context of a rule that matches any symbol, or no symbol at the ends of the string. */
+	public static final int ANY = -1;
+
+	private final char symbol;
+	private final int left;
+	private final int right;
+	private final double weight;
+	private final String replacement;
+
+	/**
+	 * Initializes the fields required.
+	 * @param symbol -- the symbol being replaced
+	 * @param left -- the symbol that must come right before it, or ANY
+	 * @param right -- the symbol that must come right after it, or ANY
+	 * @param weight -- how likely the rule is to be chosen among the rules that match
+	 * @param replacement -- what the symbol is replaced with
+	 * @throws IllegalArgumentException if the weight is not positive
+	 */
+	public Production(char symbol, int left, int right, double weight, String replacement) {
+		if (!(weight > 0) || Double.isInfinite(weight)) {
+			throw new IllegalArgumentException("The weight of a rule must be positive, found " + weight);
+		}
+		this.symbol = symbol;
+		this.left = left;
+		this.right = right;
+		this.weight = weight;
+		this.replacement = replacement;
+	}
+
+	/**
+	 * Reads a rule written as [left&lt;]symbol[&gt;right][:weight].
+	 * @param key -- the symbol, with its context and weight
+	 * @param replacement -- what the symbol is replaced with
+	 * @return the rule
+	 * @throws IllegalArgumentException if the key cannot be read
+	 */
+	public static Production parse(String key, String replacement) {
+		double weight = 1;
+		int colon = key.indexOf(':', 1);
+		if (colon > 0) {
+			try {
+				weight = Double.parseDouble(key.substring(colon + 1));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("The weight of a rule must be a number: " + key);
+			}
+			key = key.substring(0, colon);
+		}
+		int left = ANY;
+		int right = ANY;
+		if (key.length() >= 3 && key.charAt(1) == '<') {
+			left = key.charAt(0);
+			key = key.substring(2);
+		}
+		if (key.length() == 3 && key.charAt(1) == '>') {
+			right = key.charAt(2);
+			key = key.substring(0, 1);
+		}
+		if (key.length() != 1) {
+			throw new IllegalArgumentException("A rule must look like [left<]symbol[>right][:weight]: " + key);
+		}
+		return new Production(key.charAt(0), left, right, weight, replacement);
+	}
+
+	/**
+	 * Returns the symbol being replaced.
+	 * @return the symbol of the rule
+	 */
+	public char getSymbol() {
+		return this.symbol;
+	}
+
+	/**
+	 * Returns the symbol that must come right before the replaced symbol.
+	 * @return the left context, or ANY
+	 */
+	public int getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * Returns the symbol that must come right after the replaced symbol.
+	 * @return the right context, or ANY
+	 */
+	public int getRight() {
+		return this.right;
+	}
+
+	/**
+	 * Returns how likely the rule is to be chosen among the rules that match.
+	 * @return the weight of the rule
+	 */
+	public double getWeight() {
+		return this.weight;
+	}
+
+	/**
+	 * Returns what the symbol is replaced with.
+	 * @return the replacement of the rule
+	 */
+	public String getReplacement() {
+		return this.replacement;
+	}
+
+	@Override
+	/**
+	 * Returns the rule written as [left<]symbol[>right][:weight]->replacement
+	 */
+	public String toString() {
+		return (this.left == ANY ? "" : (char) this.left + "<") + this.symbol + (this.right == ANY ? "" : ">" + (char) this.right)
+				+ (this.weight == 1 ? "" : ":" + this.weight) + "->" + this.replacement;
+	}
+
+}
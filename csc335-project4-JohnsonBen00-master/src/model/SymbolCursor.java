@@ -0,0 +1,20 @@
+package model;
+/**
+ * This interface reads the symbols of an L-system one at a time, from left to right.
+ * @author Benhur J. Tadiparti
+ */
+public interface SymbolCursor {
+
+	/**
+	 * Checks if there are symbols left to read.
+	 * @return true if next() can be called, else false
+	 */
+	boolean hasNext();
+
+	/**
+	 * Returns the next symbol of the L-system.
+	 * @return the next symbol
+	 */
+	char next();
+
+}
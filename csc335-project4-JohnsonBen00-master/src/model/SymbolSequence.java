@@ -0,0 +1,102 @@
+package model;
+/**
+ * This class stores a modified L-system string as a primitive char array.
+ * The array is owned by the sequence once it is created, and is never modified.
+ * @author Benhur J. Tadiparti
+ */
+public class SymbolSequence {
+
+	private final char[] symbols;
+	private final int length;
+
+	/**
+	 * Wraps the first length chars of an array without copying them.
+	 * @param symbols -- the array holding the symbols of the L-system
+	 * @param length -- the number of symbols used in the array
+	 */
+	public SymbolSequence(char[] symbols, int length) {
+		this.symbols = symbols;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the number of symbols in the L-system.
+	 * @return the number of symbols
+	 */
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the symbol at an index of the L-system.
+	 * @param i -- the index of the symbol
+	 * @return the symbol at said index
+	 */
+	public char charAt(int i) {
+		if (i >= this.length) {
+			throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + this.length);
+		}
+		return this.symbols[i];
+	}
+
+	/**
+	 * Returns how many chars the array holding the symbols has room for.
+	 * @return the length of the array
+	 */
+	public int capacity() {
+		return this.symbols.length;
+	}
+
+	/**
+	 * Copies symbols from this sequence into an array.
+	 * @param begin -- the index of the first symbol copied
+	 * @param end -- the index after the last symbol copied
+	 * @param dst -- the array the symbols are copied into
+	 * @param dstBegin -- the index in dst where the first symbol is copied
+	 */
+	public void getChars(int begin, int end, char[] dst, int dstBegin) {
+		if (end > this.length) {
+			throw new IndexOutOfBoundsException("Index " + end + " out of bounds for length " + this.length);
+		}
+		System.arraycopy(this.symbols, begin, dst, dstBegin, end - begin);
+	}
+
+	/**
+	 * Returns a cursor that reads the symbols from left to right.
+	 * @return a cursor positioned before the first symbol
+	 */
+	public SymbolCursor cursor() {
+		return cursor(0, this.length);
+	}
+
+	/**
+	 * Returns a cursor that reads part of the symbols from left to right.
+	 * @param begin -- the index of the first symbol read
+	 * @param end -- the index after the last symbol read
+	 * @return a cursor positioned before the symbol at begin
+	 */
+	public SymbolCursor cursor(int begin, int end) {
+		if (begin < 0 || begin > end || end > this.length) {
+			throw new IndexOutOfBoundsException("Range [" + begin + ", " + end + ") out of bounds for length " + this.length);
+		}
+		return new SymbolCursor() {
+			private int i = begin;
+
+			@Override
+			public boolean hasNext() {
+				return this.i < end;
+			}
+
+			@Override
+			public char next() {
+				return symbols[this.i++];
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.symbols, 0, this.length);
+	}
+
+}